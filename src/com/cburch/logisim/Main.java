@@ -27,6 +27,13 @@ public class Main {
     public static final String VERSION_NAME = "2.1.8";
 
     public static void main(String[] args) {
+        if(args.length > 0 && args[0].equals("-gradebatch")) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            tr.edu.metu.ceng.ceng232.grader.BatchGrader.main(rest);
+            return;
+        }
+
         Startup startup = Startup.parseArgs(args);
         if(startup == null) {
             System.exit(0);
@@ -17,10 +17,8 @@ import com.cburch.logisim.analyze.model.AnalyzerModel;
 import com.cburch.logisim.analyze.model.Entry;
 import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.Expressions;
-import com.cburch.logisim.analyze.model.TruthTable;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.data.Location;
-import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.Project;
 
 public class Analyze {
@@ -300,59 +298,61 @@ public class Analyze {
     /** Returns a truth table corresponding to the circuit. */
     public static void computeTable(AnalyzerModel model, Project proj,
             Circuit circuit, Map pinLabels) {
+        computeTable(model, proj, circuit, pinLabels, null);
+    }
+    
+    /** Computes a truth table corresponding to the circuit, spreading
+     * the rows across the available processors and reporting to the
+     * given TableProgress, which may be null. Returns false, leaving
+     * the model unchanged, if the computation is canceled. */
+    public static boolean computeTable(AnalyzerModel model, Project proj,
+            Circuit circuit, Map pinLabels, TableProgress progress) {
+        Entry[][] columns = computeTableColumns(proj, circuit, pinLabels, progress);
+        if(columns == null) return false;
+        setTable(model, pinLabels, columns);
+        return true;
+    }
+
+    /** Computes the output columns of a truth table corresponding to the
+     * circuit, without touching any model, so that it may be done on
+     * another thread than the model's views. The columns are in the
+     * order of the output pins in pinLabels. Returns null if the
+     * computation is canceled. */
+    public static Entry[][] computeTableColumns(Project proj, Circuit circuit,
+            Map pinLabels, TableProgress progress) {
         ArrayList inputPins = new ArrayList();
-        ArrayList inputNames = new ArrayList();
         ArrayList outputPins = new ArrayList();
-        ArrayList outputNames = new ArrayList();
         for(Iterator it = pinLabels.keySet().iterator(); it.hasNext(); ) {
             Pin pin = (Pin) it.next();
             if(pin.isInputPin()) {
                 inputPins.add(pin);
-                inputNames.add(pinLabels.get(pin));
             } else {
                 outputPins.add(pin);
-                outputNames.add(pinLabels.get(pin));
             }
         }
         
-        int inputCount = inputPins.size();
-        int rowCount = 1 << inputCount;
+        int rowCount = 1 << inputPins.size();
         Entry[][] columns = new Entry[outputPins.size()][rowCount];
-        
-        for(int i = 0; i < rowCount; i++) {
-            CircuitState circuitState = new CircuitState(proj, circuit);
-            for(int j = 0; j < inputCount; j++) {
-                Pin pin = (Pin) inputPins.get(j);
-                boolean value = TruthTable.isInputSet(i, j, inputCount);
-                pin.setValue(circuitState, value ? Value.TRUE : Value.FALSE);
-            }
-            
-            Propagator prop = circuitState.getPropagator();
-            prop.propagate();
-            /* TODO for the SimulatorPrototype class
-            do {
-                prop.step();
-            } while(prop.isPending()); */
-            // TODO: Search for circuit state
-            
-            if(prop.isOscillating()) {
-                for(int j = 0; j < columns.length; j++) {
-                    columns[j][i] = Entry.OSCILLATE_ERROR;
-                }
+        TableComputer computer = new TableComputer(proj, circuit,
+                inputPins, outputPins, columns, progress);
+        if(!computer.compute()) return null;
+        return columns;
+    }
+
+    /** Sets the model's variables to the pins, and its truth table to
+     * columns computed by computeTableColumns. */
+    public static void setTable(AnalyzerModel model, Map pinLabels,
+            Entry[][] columns) {
+        ArrayList inputNames = new ArrayList();
+        ArrayList outputNames = new ArrayList();
+        for(Iterator it = pinLabels.keySet().iterator(); it.hasNext(); ) {
+            Pin pin = (Pin) it.next();
+            if(pin.isInputPin()) {
+                inputNames.add(pinLabels.get(pin));
             } else {
-                for(int j = 0; j < columns.length; j++) {
-                    Pin pin = (Pin) outputPins.get(j);
-                    Entry out;
-                    Value outValue = pin.getValue(circuitState).get(0);
-                    if(outValue == Value.TRUE) out = Entry.ONE;
-                    else if(outValue == Value.FALSE) out = Entry.ZERO;
-                    else if(outValue == Value.ERROR) out = Entry.BUS_ERROR;
-                    else out = Entry.DONT_CARE;
-                    columns[j][i] = out;
-                }
+                outputNames.add(pinLabels.get(pin));
             }
         }
-        
         model.setVariables(inputNames, outputNames);
         for(int i = 0; i < columns.length; i++) {
             model.getTruthTable().setOutputColumn(i, columns[i]);
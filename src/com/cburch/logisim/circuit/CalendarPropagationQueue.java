@@ -0,0 +1,240 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Arrays;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+
+/** A propagation queue organized as a timing wheel. Nearly all delays in
+ * a circuit are small integers, so each event is appended to the bucket
+ * for its time, and the events for a time are drained from the bucket
+ * in order without any comparisons. Events scheduled too far into the
+ * future for the wheel wait in an overflow list until the wheel reaches
+ * them.
+ *
+ * The events themselves are held in parallel arrays whose slots are
+ * recycled through a free list, so that once the arrays have grown to
+ * the circuit's working size, scheduling and removing events allocates
+ * nothing. */
+class CalendarPropagationQueue implements PropagationQueue {
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int INIT_CAPACITY = 256;
+
+    // the buckets of the wheel, as linked lists through next[]
+    private int[] bucketHead = new int[WHEEL_SIZE];
+    private int[] bucketTail = new int[WHEEL_SIZE];
+    private int base = 0; // the time of the wheel's earliest bucket
+    private int wheelCount = 0;
+
+    // events at least WHEEL_SIZE beyond base, in the order added
+    private int overflowHead = -1;
+    private int overflowTail = -1;
+    private int overflowCount = 0;
+    private int overflowMin = 0;
+
+    // the event records
+    private int[] times = new int[INIT_CAPACITY];
+    private int[] next = new int[INIT_CAPACITY];
+    private CircuitState[] states = new CircuitState[INIT_CAPACITY];
+    private int[] points = new int[INIT_CAPACITY];
+    private Component[] causes = new Component[INIT_CAPACITY];
+    private Value[] vals = new Value[INIT_CAPACITY];
+    private int used = 0; // slots [0, used) have been handed out before
+    private int free = -1; // head of list of recycled slots
+
+    // the event most recently removed
+    private CircuitState curState = null;
+    private int curPoint = -1;
+    private Component curCause = null;
+    private Value curVal = null;
+
+    CalendarPropagationQueue() {
+        Arrays.fill(bucketHead, -1);
+        Arrays.fill(bucketTail, -1);
+    }
+
+    public boolean isEmpty() {
+        return wheelCount == 0 && overflowCount == 0;
+    }
+
+    public int size() {
+        return wheelCount + overflowCount;
+    }
+
+    public void clear() {
+        Arrays.fill(bucketHead, -1);
+        Arrays.fill(bucketTail, -1);
+        Arrays.fill(states, 0, used, null);
+        Arrays.fill(causes, 0, used, null);
+        Arrays.fill(vals, 0, used, null);
+        wheelCount = 0;
+        overflowHead = -1;
+        overflowTail = -1;
+        overflowCount = 0;
+        used = 0;
+        free = -1;
+        curState = null;
+        curPoint = -1;
+        curCause = null;
+        curVal = null;
+    }
+
+    public void add(int time, CircuitState state, int point,
+            Component cause, Value val) {
+        // The propagator never schedules into the past, but if it did,
+        // the best we could do is to handle the event as soon as possible.
+        if(time - base < 0) time = base;
+
+        int i = allocate();
+        times[i] = time;
+        next[i] = -1;
+        states[i] = state;
+        points[i] = point;
+        causes[i] = cause;
+        vals[i] = val;
+
+        if(time - base < WHEEL_SIZE) {
+            appendToBucket(i);
+        } else {
+            if(overflowCount == 0 || time - overflowMin < 0) overflowMin = time;
+            if(overflowTail < 0) overflowHead = i;
+            else next[overflowTail] = i;
+            overflowTail = i;
+            overflowCount++;
+        }
+    }
+
+    public int peekTime() {
+        if(wheelCount > 0) {
+            for(int t = base; ; t++) {
+                if(bucketHead[t & WHEEL_MASK] >= 0) return t;
+            }
+        } else {
+            return overflowMin;
+        }
+    }
+
+    public boolean remove(int time) {
+        if(time != base) advance(time);
+
+        int bucket = time & WHEEL_MASK;
+        int i = bucketHead[bucket];
+        if(i < 0) {
+            curState = null;
+            curPoint = -1;
+            curCause = null;
+            curVal = null;
+            return false;
+        }
+        bucketHead[bucket] = next[i];
+        if(next[i] < 0) bucketTail[bucket] = -1;
+        wheelCount--;
+
+        curState = states[i];
+        curPoint = points[i];
+        curCause = causes[i];
+        curVal = vals[i];
+        states[i] = null;
+        causes[i] = null;
+        vals[i] = null;
+        next[i] = free;
+        free = i;
+        return true;
+    }
+
+    public CircuitState getState() {
+        return curState;
+    }
+
+    public int getPoint() {
+        return curPoint;
+    }
+
+    public Component getCause() {
+        return curCause;
+    }
+
+    public Value getValue() {
+        return curVal;
+    }
+
+    //
+    // private methods
+    //
+    private int allocate() {
+        int ret = free;
+        if(ret >= 0) {
+            free = next[ret];
+            return ret;
+        }
+        if(used == times.length) grow();
+        ret = used;
+        used++;
+        return ret;
+    }
+
+    private void grow() {
+        int n = 2 * times.length;
+        int[] newTimes = new int[n];
+        int[] newNext = new int[n];
+        CircuitState[] newStates = new CircuitState[n];
+        int[] newPoints = new int[n];
+        Component[] newCauses = new Component[n];
+        Value[] newVals = new Value[n];
+        System.arraycopy(times, 0, newTimes, 0, used);
+        System.arraycopy(next, 0, newNext, 0, used);
+        System.arraycopy(states, 0, newStates, 0, used);
+        System.arraycopy(points, 0, newPoints, 0, used);
+        System.arraycopy(causes, 0, newCauses, 0, used);
+        System.arraycopy(vals, 0, newVals, 0, used);
+        times = newTimes;
+        next = newNext;
+        states = newStates;
+        points = newPoints;
+        causes = newCauses;
+        vals = newVals;
+    }
+
+    private void appendToBucket(int i) {
+        int bucket = times[i] & WHEEL_MASK;
+        next[i] = -1;
+        if(bucketTail[bucket] < 0) bucketHead[bucket] = i;
+        else next[bucketTail[bucket]] = i;
+        bucketTail[bucket] = i;
+        wheelCount++;
+    }
+
+    private void advance(int time) {
+        base = time;
+        if(overflowCount == 0 || overflowMin - base >= WHEEL_SIZE) return;
+
+        // Move the overflow events that now fit onto the wheel. This
+        // happens before anything else can be scheduled at the new base,
+        // so events for the same time remain in the order added.
+        int prev = -1;
+        int i = overflowHead;
+        boolean minFound = false;
+        while(i >= 0) {
+            int n = next[i];
+            if(times[i] - base < WHEEL_SIZE) {
+                if(prev < 0) overflowHead = n;
+                else next[prev] = n;
+                if(overflowTail == i) overflowTail = prev;
+                overflowCount--;
+                appendToBucket(i);
+            } else {
+                if(!minFound || times[i] - overflowMin < 0) {
+                    overflowMin = times[i];
+                    minFound = true;
+                }
+                prev = i;
+            }
+            i = n;
+        }
+    }
+}
@@ -4,7 +4,11 @@
 package com.cburch.logisim.circuit;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,13 +38,21 @@ public class Circuit extends AbstractComponentFactory {
             EndData newEnd = (EndData) e.getData();
             wires.remove(comp, oldEnd);
             wires.add(comp, newEnd);
+            netlist = null;
+            grid.invalidate(comp);
+            bounds = null;
             fireEvent(CircuitEvent.ACTION_INVALIDATE, comp);
         }
         public void componentInvalidated(ComponentEvent e) {
+            grid.invalidate(e.getSource());
+            bounds = null;
             fireEvent(CircuitEvent.ACTION_INVALIDATE, e.getSource());
         }
     }
 
+    // how far beyond the clip a component can draw and still be seen
+    private static final int CLIP_MARGIN = 10;
+
     private MyComponentListener myComponentListener = new MyComponentListener();
     private String name;
     private EventSourceWeakSupport listeners = new EventSourceWeakSupport();
@@ -49,6 +61,10 @@ public class Circuit extends AbstractComponentFactory {
     CircuitWires wires = new CircuitWires();
         // wires is package-protected for CircuitState and Analyze only.
     private ArrayList clocks = new ArrayList();
+    private Netlist netlist = null; // computed lazily by getNetlist
+    private CircuitLevels levels = null; // computed lazily by getLevels
+    private CircuitGrid grid = new CircuitGrid(); // includes wires
+    private Bounds bounds = null; // computed lazily by getBounds
 
     public Circuit(String name) {
         this.name = name;
@@ -60,6 +76,9 @@ public class Circuit extends AbstractComponentFactory {
         pins = new CircuitPins();
         wires = new CircuitWires();
         clocks.clear();
+        netlist = null;
+        grid.clear();
+        bounds = null;
         fireEvent(CircuitEvent.ACTION_CLEAR, oldComps);
     }
 
@@ -128,6 +147,28 @@ public class Circuit extends AbstractComponentFactory {
         return comps;
     }
 
+    Netlist getNetlist() {
+        Netlist ret = netlist;
+        if(ret == null) {
+            ret = new Netlist(this);
+            netlist = ret;
+        }
+        return ret;
+    }
+
+    // The levels depend on the wires as well as the netlist, and the
+    // netlist is not recomputed when only wires change.
+    CircuitLevels getLevels() {
+        Netlist curNetlist = getNetlist();
+        CircuitWires.BundleMap map = wires.getBundleMap();
+        CircuitLevels ret = levels;
+        if(ret == null || !ret.isFor(curNetlist, map)) {
+            ret = new CircuitLevels(this, curNetlist, map);
+            levels = ret;
+        }
+        return ret;
+    }
+
     public Collection getComponents(Location loc) {
         return wires.points.getComponents(loc);
     }
@@ -150,7 +191,8 @@ public class Circuit extends AbstractComponentFactory {
 
     public Collection getAllContaining(Location pt) {
         HashSet ret = new HashSet();
-        for(Iterator it = getComponents().iterator(); it.hasNext(); ) {
+        Bounds query = Bounds.create(pt.getX(), pt.getY(), 1, 1);
+        for(Iterator it = grid.getCandidates(query, null).iterator(); it.hasNext(); ) {
             Component comp = (Component) it.next();
             if(comp.contains(pt)) ret.add(comp);
         }
@@ -159,7 +201,8 @@ public class Circuit extends AbstractComponentFactory {
 
     public Collection getAllContaining(Location pt, Graphics g) {
         HashSet ret = new HashSet();
-        for(Iterator it = getComponents().iterator(); it.hasNext(); ) {
+        Bounds query = Bounds.create(pt.getX(), pt.getY(), 1, 1);
+        for(Iterator it = grid.getCandidates(query, g).iterator(); it.hasNext(); ) {
             Component comp = (Component) it.next();
             if(comp.contains(pt, g)) ret.add(comp);
         }
@@ -168,7 +211,7 @@ public class Circuit extends AbstractComponentFactory {
 
     public Collection getAllWithin(Bounds bds) {
         HashSet ret = new HashSet();
-        for(Iterator it = getComponents().iterator(); it.hasNext(); ) {
+        for(Iterator it = grid.getCandidates(bds, null).iterator(); it.hasNext(); ) {
             Component comp = (Component) it.next();
             if(bds.contains(comp.getBounds())) ret.add(comp);
         }
@@ -177,7 +220,7 @@ public class Circuit extends AbstractComponentFactory {
 
     public Collection getAllWithin(Bounds bds, Graphics g) {
         HashSet ret = new HashSet();
-        for(Iterator it = getComponents().iterator(); it.hasNext(); ) {
+        for(Iterator it = grid.getCandidates(bds, g).iterator(); it.hasNext(); ) {
             Component comp = (Component) it.next();
             if(bds.contains(comp.getBounds(g))) ret.add(comp);
         }
@@ -185,6 +228,15 @@ public class Circuit extends AbstractComponentFactory {
     }
 
     public Bounds getBounds() {
+        Bounds ret = bounds;
+        if(ret == null) {
+            ret = computeBounds();
+            bounds = ret;
+        }
+        return ret;
+    }
+
+    private Bounds computeBounds() {
         Iterator it = comps.iterator();
         if(!it.hasNext()) return wires.getWireBounds();
         Component first = (Component) it.next();
@@ -243,6 +295,7 @@ public class Circuit extends AbstractComponentFactory {
             Wire w = (Wire) c;
             if(w.getEnd0().equals(w.getEnd1())) return;
             wires.add(w);
+            grid.add(w);
         } else {
             // add it into the circuit
             wires.add(c);
@@ -250,7 +303,10 @@ public class Circuit extends AbstractComponentFactory {
             if(c instanceof Pin) pins.addPin((Pin) c);
             else if(c instanceof Clock) clocks.add(c);
             c.addComponentListener(myComponentListener);
+            netlist = null;
+            grid.add(c);
         }
+        bounds = null;
         fireEvent(CircuitEvent.ACTION_ADD, c);
     }
 
@@ -263,11 +319,17 @@ public class Circuit extends AbstractComponentFactory {
             if(c instanceof Pin) pins.removePin((Pin) c);
             else if(c instanceof Clock) clocks.remove(c);
             c.removeComponentListener(myComponentListener);
+            netlist = null;
         }
+        grid.remove(c);
+        bounds = null;
         fireEvent(CircuitEvent.ACTION_REMOVE, c);
     }
 
     public void componentChanged(Component c) {
+        netlist = null;
+        grid.invalidate(c);
+        bounds = null;
         fireEvent(CircuitEvent.ACTION_CHANGE, c);
     }
 
@@ -276,36 +338,71 @@ public class Circuit extends AbstractComponentFactory {
     //
     public void draw(ComponentDrawContext context, Collection hidden) {
         Graphics g = context.getGraphics();
-        Graphics g_copy = g.create();
-        context.setGraphics(g_copy);
-        wires.draw(context, hidden);
-
-        if(hidden == null || hidden.size() == 0) {
-            for(Iterator it = comps.iterator(); it.hasNext(); ) {
-                Component c = (Component) it.next();
-
-                Graphics g_new = g.create();
-                context.setGraphics(g_new);
-                g_copy.dispose();
-                g_copy = g_new;
-
-                c.draw(context);
-            }
+        Rectangle clip = g.getClipBounds();
+        Collection toDraw;
+        if(clip == null) {
+            Graphics g_copy = g.create();
+            context.setGraphics(g_copy);
+            wires.draw(context, hidden);
+            context.setGraphics(g);
+            g_copy.dispose();
+            toDraw = comps;
         } else {
-            for(Iterator it = comps.iterator(); it.hasNext(); ) {
+            // draw only what is near enough to the clip to be seen
+            Bounds query = Bounds.create(clip).expand(CLIP_MARGIN);
+            ArrayList nearWires = new ArrayList();
+            ArrayList nearComps = new ArrayList();
+            HashSet splitLocs = new HashSet();
+            for(Iterator it = grid.getCandidates(query, g).iterator(); it.hasNext(); ) {
                 Component c = (Component) it.next();
-                if(!hidden.contains(c)) {
-                    Graphics g_new = g.create();
-                    context.setGraphics(g_new);
-                    g_copy.dispose();
-                    g_copy = g_new;
+                if(c instanceof Wire) nearWires.add(c);
+                else                  nearComps.add(c);
+                for(Iterator it2 = c.getEnds().iterator(); it2.hasNext(); ) {
+                    Location loc = ((EndData) it2.next()).getLocation();
+                    if(query.contains(loc)) splitLocs.add(loc);
+                }
+            }
+            Graphics g_copy = g.create();
+            context.setGraphics(g_copy);
+            wires.draw(context, hidden, nearWires, splitLocs);
+            context.setGraphics(g);
+            g_copy.dispose();
+            toDraw = nearComps;
+        }
 
-                    c.draw(context);
+        // Components that promise to change nothing but the color, font
+        // and stroke share one copy of the Graphics, which is restored
+        // after each; any other component gets a copy of its own.
+        boolean noneHidden = hidden == null || hidden.size() == 0;
+        Graphics shared = null;
+        Color color = g.getColor();
+        Font font = g.getFont();
+        Stroke stroke = g instanceof Graphics2D ? ((Graphics2D) g).getStroke() : null;
+        for(Iterator it = toDraw.iterator(); it.hasNext(); ) {
+            Component c = (Component) it.next();
+            if(!noneHidden && hidden.contains(c)) continue;
+
+            Object shares = c.getFactory().getFeature(SHARES_GRAPHICS,
+                    c.getAttributeSet());
+            if(shares == Boolean.TRUE) {
+                if(shared == null) {
+                    shared = g.create();
+                } else {
+                    shared.setColor(color);
+                    shared.setFont(font);
+                    if(stroke != null) ((Graphics2D) shared).setStroke(stroke);
                 }
+                context.setGraphics(shared);
+                c.draw(context);
+            } else {
+                Graphics g_copy = g.create();
+                context.setGraphics(g_copy);
+                c.draw(context);
+                g_copy.dispose();
             }
         }
         context.setGraphics(g);
-        g_copy.dispose();
+        if(shared != null) shared.dispose();
     }
 
     //
@@ -0,0 +1,100 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.proj.Project;
+
+/** Simulates a circuit on the calling thread. Whereas a Simulator
+ * propagates values in its own thread and reports back through
+ * listeners, each method here does its work before returning, so that
+ * a program can apply a set of inputs, propagate them and read the
+ * resulting outputs in a simple loop.
+ *
+ * A driver should not be used on a state that a Simulator is also
+ * propagating, except from the Simulator's own thread. */
+public class CircuitDriver {
+    private CircuitState state;
+    private Propagator prop;
+
+    /** Creates a driver for a new top-level state of the circuit. */
+    public CircuitDriver(Project proj, Circuit circuit) {
+        this(new CircuitState(proj, circuit));
+    }
+
+    /** Creates a driver for the given top-level state. */
+    public CircuitDriver(CircuitState state) {
+        if(state.isSubstate()) {
+            throw new IllegalArgumentException("state is not top-level");
+        }
+        this.state = state;
+        this.prop = state.getPropagator();
+    }
+
+    public CircuitState getCircuitState() {
+        return state;
+    }
+
+    /** Returns every value in the state to how it was when the state
+     * was created and propagates the circuit from there, as the
+     * Simulator's reset does, returning false if it oscillates. */
+    public boolean reset() {
+        prop.reset();
+        return propagate();
+    }
+
+    /** Changes the value sent by an input pin or a clock. The new value
+     * does not reach the rest of the circuit until propagate is called. */
+    public void setInput(Component input, Value value) {
+        if(input instanceof Pin) {
+            Pin pin = (Pin) input;
+            if(!pin.isInputPin()) {
+                throw new IllegalArgumentException("pin is not an input pin");
+            }
+            pin.changeValue(state, value);
+        } else if(input instanceof Clock) {
+            ((Clock) input).changeValue(state, value);
+        } else {
+            throw new IllegalArgumentException("component is not a pin or clock");
+        }
+    }
+
+    /** Propagates values until the circuit settles, returning false if
+     * it oscillates instead. */
+    public boolean propagate() {
+        prop.propagate();
+        return !prop.isOscillating();
+    }
+
+    public boolean isOscillating() {
+        return prop.isOscillating();
+    }
+
+    /** Returns the value at a pin or clock. */
+    public Value getValue(Component comp) {
+        if(comp instanceof Pin) {
+            return ((Pin) comp).getValue(state);
+        } else if(comp instanceof Clock) {
+            return ((Clock) comp).getLogValue(state, null);
+        } else {
+            throw new IllegalArgumentException("component is not a pin or clock");
+        }
+    }
+
+    /** Applies the values to the inputs, propagates them and returns the
+     * values at the outputs. Whether the circuit settled can be checked
+     * afterwards with isOscillating. */
+    public Value[] step(Component[] inputs, Value[] values, Component[] outputs) {
+        for(int i = 0; i < inputs.length; i++) {
+            setInput(inputs[i], values[i]);
+        }
+        propagate();
+        Value[] ret = new Value[outputs.length];
+        for(int i = 0; i < outputs.length; i++) {
+            ret[i] = getValue(outputs[i]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Bounds;
+
+/** Files a circuit's components and wires into a grid of square cells,
+ * so that the components near a point or within a rectangle can be
+ * found without looking at every component in the circuit.
+ *
+ * A component's bounds can change without it being added or removed -
+ * for instance, when an attribute changes. The circuit reports such
+ * components through <code>invalidate</code>, and they are refiled
+ * just before the next query.
+ *
+ * Some components, such as labeled pins, are larger when drawn than
+ * their <code>getBounds()</code> says, by an amount that depends on the
+ * font metrics of a <code>Graphics</code>. The first query made with a
+ * <code>Graphics</code> after such a component is filed measures it and
+ * files it under the larger bounds. */
+class CircuitGrid {
+    private static final int CELL_SHIFT = 6; // cells are 64 pixels square
+    private static final int MAX_CELLS = 256; // larger ones go in big
+    private static final int TEXT_MARGIN = 4; // allows for differing fonts
+
+    private HashMap cells = new HashMap(); // Long -> HashSet of Components
+    private HashSet big = new HashSet(); // components filed in no cell
+    private HashMap filed = new HashMap(); // Component -> Bounds where filed
+    private HashSet dirty = new HashSet(); // components to refile
+    private HashSet unmeasured = new HashSet(); // components to measure
+
+    void add(Component comp) {
+        dirty.add(comp);
+    }
+
+    void remove(Component comp) {
+        dirty.remove(comp);
+        unmeasured.remove(comp);
+        unfile(comp);
+    }
+
+    void invalidate(Component comp) {
+        if(filed.containsKey(comp)) dirty.add(comp);
+    }
+
+    void clear() {
+        cells.clear();
+        big.clear();
+        filed.clear();
+        dirty.clear();
+        unmeasured.clear();
+    }
+
+    /** Returns every component whose bounds might intersect the query,
+     * which may include some whose bounds do not. If a Graphics is
+     * given, the bounds used are those the component would have when
+     * drawn with it. */
+    HashSet getCandidates(Bounds query, Graphics g) {
+        update(g);
+        HashSet ret = new HashSet(big);
+        int x0 = query.getX() >> CELL_SHIFT;
+        int y0 = query.getY() >> CELL_SHIFT;
+        int x1 = (query.getX() + query.getWidth()) >> CELL_SHIFT;
+        int y1 = (query.getY() + query.getHeight()) >> CELL_SHIFT;
+        if((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+            // the query covers more cells than are occupied
+            for(Iterator it = cells.entrySet().iterator(); it.hasNext(); ) {
+                java.util.Map.Entry entry = (java.util.Map.Entry) it.next();
+                long key = ((Long) entry.getKey()).longValue();
+                int x = (int) (key >> 32);
+                int y = (int) key;
+                if(x >= x0 && x <= x1 && y >= y0 && y <= y1) {
+                    ret.addAll((HashSet) entry.getValue());
+                }
+            }
+        } else {
+            for(int x = x0; x <= x1; x++) {
+                for(int y = y0; y <= y1; y++) {
+                    HashSet cell = (HashSet) cells.get(getKey(x, y));
+                    if(cell != null) ret.addAll(cell);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void update(Graphics g) {
+        if(!dirty.isEmpty()) {
+            Object[] toFile = dirty.toArray();
+            dirty.clear();
+            for(int i = 0; i < toFile.length; i++) {
+                Component comp = (Component) toFile[i];
+                unfile(comp);
+                file(comp, comp.getBounds());
+                if(!(comp instanceof Wire)) unmeasured.add(comp);
+            }
+        }
+        if(g != null && !unmeasured.isEmpty()) {
+            Object[] toMeasure = unmeasured.toArray();
+            unmeasured.clear();
+            for(int i = 0; i < toMeasure.length; i++) {
+                Component comp = (Component) toMeasure[i];
+                Bounds bds = comp.getBounds();
+                Bounds drawn = comp.getBounds(g);
+                if(bds == null || drawn == null || bds.contains(drawn)) continue;
+                unfile(comp);
+                file(comp, bds.add(drawn.expand(TEXT_MARGIN)));
+            }
+        }
+    }
+
+    private void file(Component comp, Bounds bds) {
+        filed.put(comp, bds);
+        if(bds == null) {
+            big.add(comp);
+            return;
+        }
+        // Component.contains allows an error of one pixel
+        int x0 = (bds.getX() - 1) >> CELL_SHIFT;
+        int y0 = (bds.getY() - 1) >> CELL_SHIFT;
+        int x1 = (bds.getX() + bds.getWidth() + 1) >> CELL_SHIFT;
+        int y1 = (bds.getY() + bds.getHeight() + 1) >> CELL_SHIFT;
+        if((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+            big.add(comp);
+            return;
+        }
+        for(int x = x0; x <= x1; x++) {
+            for(int y = y0; y <= y1; y++) {
+                Long key = getKey(x, y);
+                HashSet cell = (HashSet) cells.get(key);
+                if(cell == null) {
+                    cell = new HashSet();
+                    cells.put(key, cell);
+                }
+                cell.add(comp);
+            }
+        }
+    }
+
+    private void unfile(Component comp) {
+        if(!filed.containsKey(comp)) return;
+        Bounds bds = (Bounds) filed.remove(comp);
+        if(big.remove(comp) || bds == null) return;
+        int x0 = (bds.getX() - 1) >> CELL_SHIFT;
+        int y0 = (bds.getY() - 1) >> CELL_SHIFT;
+        int x1 = (bds.getX() + bds.getWidth() + 1) >> CELL_SHIFT;
+        int y1 = (bds.getY() + bds.getHeight() + 1) >> CELL_SHIFT;
+        ArrayList emptied = null;
+        for(int x = x0; x <= x1; x++) {
+            for(int y = y0; y <= y1; y++) {
+                Long key = getKey(x, y);
+                HashSet cell = (HashSet) cells.get(key);
+                if(cell != null && cell.remove(comp) && cell.isEmpty()) {
+                    if(emptied == null) emptied = new ArrayList();
+                    emptied.add(key);
+                }
+            }
+        }
+        if(emptied != null) {
+            for(int i = 0; i < emptied.size(); i++) cells.remove(emptied.get(i));
+        }
+    }
+
+    private static Long getKey(int x, int y) {
+        return new Long(((long) x << 32) | (y & 0xFFFFFFFFL));
+    }
+}
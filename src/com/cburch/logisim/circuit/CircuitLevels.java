@@ -0,0 +1,248 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.EndData;
+import com.cburch.logisim.util.IntegerFactory;
+
+/** Ranks the combinational components of a circuit for levelized
+ * simulation, in which a component whose inputs change is propagated
+ * with no delay, after every component feeding it has been.
+ *
+ * A component is taken to be combinational if it can compute an
+ * expression for the analyzer, as gates can. One component feeds another
+ * if an output of the first and an input of the second are connected
+ * through wires and splitters. Components are ranked by their distance
+ * from the components feeding nothing else that is ranked; those on a
+ * cycle, or feeding one and fed by one, are not ranked, and propagate
+ * with their delays as usual, so that every cycle still has a delay.
+ *
+ * Util's Dag searches the whole graph each time it adds an edge, which
+ * would take quadratic time on a large circuit, so the ranks are found
+ * here by repeatedly removing nodes with no remaining predecessors.
+ *
+ * The ranks depend on both the circuit's Netlist and its wires' bundle
+ * map, and the Circuit computes them again when either changes. */
+class CircuitLevels {
+    private Netlist netlist;
+    private CircuitWires.BundleMap bundleMap;
+    private HashMap indices = new HashMap(); // Component -> Integer
+    private Component[] order; // ranked components, in order of rank
+    private int[] ranks; // rank of each component in order
+
+    CircuitLevels(Circuit circuit, Netlist netlist,
+            CircuitWires.BundleMap bundleMap) {
+        this.netlist = netlist;
+        this.bundleMap = bundleMap;
+
+        // find the combinational components
+        ArrayList comps = new ArrayList();
+        for(Iterator it = circuit.getNonWires().iterator(); it.hasNext(); ) {
+            Component comp = (Component) it.next();
+            if(comp.getFeature(ExpressionComputer.class) != null) comps.add(comp);
+        }
+        int n = comps.size();
+
+        // number the nets, and find which components drive each
+        int[] nets = findNets(circuit.wires.points.getIdCount(), bundleMap);
+        HashMap drivers = new HashMap(); // Integer net -> ArrayList of Integer
+        for(int i = 0; i < n; i++) {
+            List ends = ((Component) comps.get(i)).getEnds();
+            for(int j = 0, m = ends.size(); j < m; j++) {
+                EndData end = (EndData) ends.get(j);
+                if(end == null || !end.isOutput()) continue;
+                Integer net = getNet(nets, circuit, end);
+                if(net == null) continue;
+                ArrayList list = (ArrayList) drivers.get(net);
+                if(list == null) {
+                    list = new ArrayList();
+                    drivers.put(net, list);
+                }
+                list.add(IntegerFactory.create(i));
+            }
+        }
+
+        // find each component's predecessors and successors
+        int[][] preds = new int[n][];
+        ArrayList[] succs = new ArrayList[n];
+        for(int i = 0; i < n; i++) succs[i] = new ArrayList();
+        int[] predCount = new int[n];
+        for(int i = 0; i < n; i++) {
+            ArrayList found = new ArrayList();
+            List ends = ((Component) comps.get(i)).getEnds();
+            for(int j = 0, m = ends.size(); j < m; j++) {
+                EndData end = (EndData) ends.get(j);
+                if(end == null || !end.isInput()) continue;
+                Integer net = getNet(nets, circuit, end);
+                ArrayList list = net == null ? null : (ArrayList) drivers.get(net);
+                if(list == null) continue;
+                for(int k = 0; k < list.size(); k++) {
+                    Integer pred = (Integer) list.get(k);
+                    if(!found.contains(pred)) found.add(pred);
+                }
+            }
+            preds[i] = new int[found.size()];
+            for(int k = 0; k < preds[i].length; k++) {
+                int pred = ((Integer) found.get(k)).intValue();
+                preds[i][k] = pred;
+                succs[pred].add(IntegerFactory.create(i));
+            }
+            predCount[i] = preds[i].length;
+        }
+
+        // rank components not reached from a cycle, in topological order
+        int[] rank = new int[n];
+        boolean[] ranked = new boolean[n];
+        int[] fringe = new int[n];
+        int fringeEnd = 0;
+        for(int i = 0; i < n; i++) {
+            if(predCount[i] == 0) fringe[fringeEnd++] = i;
+        }
+        for(int f = 0; f < fringeEnd; f++) {
+            int i = fringe[f];
+            ranked[i] = true;
+            for(int k = 0; k < succs[i].size(); k++) {
+                int succ = ((Integer) succs[i].get(k)).intValue();
+                if(rank[succ] < rank[i] + 1) rank[succ] = rank[i] + 1;
+                predCount[succ]--;
+                if(predCount[succ] == 0) fringe[fringeEnd++] = succ;
+            }
+        }
+
+        // Of those remaining, the ones that feed no cycle can be ranked
+        // too: remove those with no remaining successors until none
+        // remain, and rank them in the reverse of the order removed.
+        int[] succCount = new int[n];
+        for(int i = 0; i < n; i++) {
+            if(ranked[i]) continue;
+            for(int k = 0; k < succs[i].size(); k++) {
+                int succ = ((Integer) succs[i].get(k)).intValue();
+                if(!ranked[succ]) succCount[i]++;
+            }
+        }
+        int[] removed = new int[n];
+        int removedEnd = 0;
+        for(int i = 0; i < n; i++) {
+            if(!ranked[i] && succCount[i] == 0) removed[removedEnd++] = i;
+        }
+        for(int r = 0; r < removedEnd; r++) {
+            int[] p = preds[removed[r]];
+            for(int k = 0; k < p.length; k++) {
+                if(ranked[p[k]]) continue;
+                succCount[p[k]]--;
+                if(succCount[p[k]] == 0) removed[removedEnd++] = p[k];
+            }
+        }
+        for(int r = removedEnd - 1; r >= 0; r--) {
+            int i = removed[r];
+            int[] p = preds[i];
+            for(int k = 0; k < p.length; k++) {
+                if(ranked[p[k]] && rank[i] < rank[p[k]] + 1) rank[i] = rank[p[k]] + 1;
+            }
+            ranked[i] = true;
+        }
+
+        // order the ranked components by rank
+        int count = 0;
+        int maxRank = 0;
+        for(int i = 0; i < n; i++) {
+            if(ranked[i]) {
+                count++;
+                if(rank[i] > maxRank) maxRank = rank[i];
+            }
+        }
+        int[] start = new int[maxRank + 2];
+        for(int i = 0; i < n; i++) {
+            if(ranked[i]) start[rank[i] + 1]++;
+        }
+        for(int r = 1; r < start.length; r++) start[r] += start[r - 1];
+        order = new Component[count];
+        ranks = new int[count];
+        for(int i = 0; i < n; i++) {
+            if(!ranked[i]) continue;
+            int index = start[rank[i]]++;
+            order[index] = (Component) comps.get(i);
+            ranks[index] = rank[i];
+            indices.put(order[index], IntegerFactory.create(index));
+        }
+    }
+
+    // Returns the net number of each location id: locations connected
+    // through wires or splitters share a number.
+    private static int[] findNets(int pointCount, CircuitWires.BundleMap map) {
+        int[] parent = new int[pointCount];
+        for(int i = 0; i < pointCount; i++) parent[i] = i;
+        int[] threadPoint = new int[map.threadCount];
+        for(int i = 0; i < threadPoint.length; i++) threadPoint[i] = -1;
+        for(int i = 0; i < map.bundleCount; i++) {
+            WireBundle b = map.bundlesById[i];
+            if(b == null || b.pointIds == null || b.pointIds.length == 0) continue;
+            int first = b.pointIds[0];
+            if(first < 0 || first >= pointCount) continue;
+            for(int j = 1; j < b.pointIds.length; j++) {
+                int p = b.pointIds[j];
+                if(p >= 0 && p < pointCount) union(parent, first, p);
+            }
+            if(b.threads == null) continue;
+            for(int j = 0; j < b.threads.length; j++) {
+                int t = b.threads[j].id;
+                if(t < 0 || t >= threadPoint.length) continue;
+                if(threadPoint[t] < 0) threadPoint[t] = first;
+                else union(parent, threadPoint[t], first);
+            }
+        }
+        for(int i = 0; i < pointCount; i++) parent[i] = find(parent, i);
+        return parent;
+    }
+
+    private static int find(int[] parent, int i) {
+        while(parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if(a != b) parent[b] = a;
+    }
+
+    private static Integer getNet(int[] nets, Circuit circuit, EndData end) {
+        int point = circuit.wires.points.getId(end.getLocation());
+        if(point < 0 || point >= nets.length) return null;
+        return IntegerFactory.create(nets[point]);
+    }
+
+    boolean isFor(Netlist netlist, CircuitWires.BundleMap bundleMap) {
+        return this.netlist == netlist && this.bundleMap == bundleMap;
+    }
+
+    /** Returns the number of ranked components. */
+    int size() {
+        return order.length;
+    }
+
+    /** Returns the component's position in order of rank, or -1 if it is
+     * not ranked. */
+    int getIndex(Component comp) {
+        Integer ret = (Integer) indices.get(comp);
+        return ret == null ? -1 : ret.intValue();
+    }
+
+    Component get(int index) {
+        return order[index];
+    }
+
+    int getRank(int index) {
+        return ranks[index];
+    }
+}
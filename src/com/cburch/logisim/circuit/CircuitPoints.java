@@ -18,6 +18,7 @@ import com.cburch.logisim.data.Location;
 
 class CircuitPoints {
     private static class LocationData {
+        int id;
         BitWidth width = BitWidth.UNKNOWN;
         ArrayList components = new ArrayList(4);
         ArrayList ends = new ArrayList(4); // parallel to components - elements corresponding
@@ -26,6 +27,18 @@ class CircuitPoints {
 
     private HashMap map = new HashMap(); // maps Locations to LocationDatas
     private HashMap incompatibilityData = new HashMap(); // maps Points to WidthIncompatibilityData
+    
+    // Each location gets an id when a component first reaches it, and
+    // gives it up when the last component leaves. Ids given up are
+    // reused, so that arrays indexed by id (as in CircuitState) grow with
+    // the circuit rather than with its history of edits. A state forgets
+    // what it held for a reused id when the component reaching it is
+    // added, and the Propagator drops events whose cause no longer has
+    // an end at their point.
+    private Location[] locations = new Location[16]; // indexed by id; null if free
+    private int idCount = 0;
+    private int[] freeIds = new int[16]; // ids given up, to be reused
+    private int freeCount = 0;
 
     public CircuitPoints() { }
 
@@ -41,6 +54,21 @@ class CircuitPoints {
         return locData == null ? BitWidth.UNKNOWN : locData.width;
     }
     
+    int getId(Location loc) {
+        LocationData locData = (LocationData) map.get(loc);
+        return locData == null ? -1 : locData.id;
+    }
+    
+    /** Returns the location with the given id, or null if no location
+     * has it now. */
+    Location getLocation(int id) {
+        return locations[id];
+    }
+    
+    int getIdCount() {
+        return idCount;
+    }
+    
     int getComponentCount(Location loc) {
         LocationData locData = (LocationData) map.get(loc);
         return locData == null ? 0 : locData.components.size(); 
@@ -169,6 +197,7 @@ class CircuitPoints {
         LocationData locData = (LocationData) map.get(loc);
         if(locData == null) {
             locData = new LocationData();
+            locData.id = allocateId(loc);
             map.put(loc, locData);
         }
         locData.components.add(comp);
@@ -176,6 +205,34 @@ class CircuitPoints {
         computeIncompatibilityData(loc, locData);
     }
     
+    private synchronized int allocateId(Location loc) {
+        if(freeCount > 0) {
+            freeCount--;
+            int id = freeIds[freeCount];
+            locations[id] = loc;
+            return id;
+        }
+        if(idCount == locations.length) {
+            Location[] newLocations = new Location[2 * idCount];
+            System.arraycopy(locations, 0, newLocations, 0, idCount);
+            locations = newLocations;
+        }
+        locations[idCount] = loc;
+        idCount++;
+        return idCount - 1;
+    }
+    
+    private synchronized void releaseId(int id) {
+        locations[id] = null;
+        if(freeCount == freeIds.length) {
+            int[] newFree = new int[2 * freeCount];
+            System.arraycopy(freeIds, 0, newFree, 0, freeCount);
+            freeIds = newFree;
+        }
+        freeIds[freeCount] = id;
+        freeCount++;
+    }
+    
     private void removeSub(Location loc, Component comp) {
         LocationData locData = (LocationData) map.get(loc);
         if(locData == null) return;
@@ -186,6 +243,7 @@ class CircuitPoints {
         if(locData.components.size() == 1) {
             map.remove(loc);
             incompatibilityData.remove(loc);
+            releaseId(locData.id);
         } else {
             locData.components.remove(index);
             locData.ends.remove(index);
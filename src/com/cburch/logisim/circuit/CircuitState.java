@@ -4,6 +4,7 @@
 package com.cburch.logisim.circuit;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Set;
@@ -11,7 +12,9 @@ import java.util.Set;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.comp.ComponentState;
+import com.cburch.logisim.comp.EndData;
 import com.cburch.logisim.data.BitWidth;
+import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.Project;
@@ -24,6 +27,7 @@ public class CircuitState {
             int action = event.getAction();
             if(action == CircuitEvent.ACTION_ADD) {
                 Component comp = (Component) event.getData();
+                clearNewPoints(comp);
                 if(comp instanceof Wire) {
                     Wire w = (Wire) comp;
                     markPointAsDirty(w.getEnd0());
@@ -55,23 +59,58 @@ public class CircuitState {
             } else if(action == CircuitEvent.ACTION_CLEAR) {
                 substates.clear();
                 wireData = null;
-                componentData.clear();
-                values.clear();
+                componentData = new ComponentData();
+                if(valuesShared != null) release(valuesShared);
+                valuesShared = null;
+                values = new Value[INIT_POINTS];
                 dirtyComponents.clear();
-                dirtyPoints.clear();
-                causes.clear();
+                dirtyPoints = new int[INIT_POINTS];
+                dirtyPointFlags = new boolean[INIT_POINTS];
+                dirtyPointCount = 0;
+                changedPoints = new int[INIT_POINTS];
+                changedPointFlags = new boolean[INIT_POINTS];
+                changedPointCount = 0;
+                allChanged = true;
+                if(causesShared != null) release(causesShared);
+                causesShared = null;
+                causes = new Propagator.SetData[INIT_POINTS];
             } else if(action == CircuitEvent.ACTION_CHANGE) {
                 Component comp = (Component) event.getData();
                 markComponentAsDirty(comp);
                 if(base != null) base.checkComponentEnds(CircuitState.this, comp);
             } else if(action == CircuitEvent.ACTION_INVALIDATE) {
                 Component comp = (Component) event.getData();
+                clearNewPoints(comp); // its ends may have moved
                 markComponentAsDirty(comp);
                 if(base != null) base.checkComponentEnds(CircuitState.this, comp);
             }
         }
     }
 
+    /** The data of each component, laid out by the circuit's netlist,
+     * which is shared by every state for the circuit. Data for a
+     * component that the netlist lacks is kept in a map instead. The
+     * whole is replaced when laid out for a new netlist, so that another
+     * thread reading it never sees one netlist's indices with another's
+     * array. */
+    private static class ComponentData {
+        Netlist netlist = null;
+        Object[] values = new Object[0]; // indexed by component index
+        HashMap others = null; // Component -> Object, created when needed
+    }
+
+    /** Counts the states using an array, which is copied before any of
+     * them changes it. */
+    private static class Shared {
+        int users = 1;
+    }
+
+    private static final int INIT_POINTS = 16;
+    // shared by snapshots, which never write to them
+    private static final Propagator.SetData[] NO_CAUSES = new Propagator.SetData[0];
+    private static final int[] NO_POINTS = new int[0];
+    private static final boolean[] NO_FLAGS = new boolean[0];
+
     private MyCircuitListener myCircuitListener = new MyCircuitListener();
     private Propagator base = null; // base of tree of CircuitStates
     private Project proj; // project where circuit lies
@@ -82,19 +121,38 @@ public class CircuitState {
     private ArraySet substates = new ArraySet(); // children in tree of CircuitStates
 
     private CircuitWires.State wireData = null;
-    private HashMap componentData = new HashMap(); // Components -> Objects
-    private HashMap values = new HashMap(); // Points -> Values
+    private ComponentData componentData = new ComponentData();
+    private Value[] values = new Value[INIT_POINTS]; // indexed by location id
+    private Shared valuesShared = null; // non-null if values may be shared
     private SmallSet dirtyComponents = new SmallSet(); // of Components
-    private SmallSet dirtyPoints = new SmallSet(); // of Points
-    HashMap causes = new HashMap(); // of SetDatas, managed by Propagator
+    private int[] dirtyPoints = new int[INIT_POINTS]; // of location ids
+    private boolean[] dirtyPointFlags = new boolean[INIT_POINTS]; // indexed by location id
+    private int dirtyPointCount = 0;
+    private int[] changedPoints = new int[INIT_POINTS]; // of location ids
+    private boolean[] changedPointFlags = new boolean[INIT_POINTS]; // indexed by location id
+    private int changedPointCount = 0;
+    private boolean allChanged = true;
+    private EndSlots slots = new EndSlots(this);
+    private LevelQueue levelQueue = null; // created when first levelizing
+    Propagator.SetData[] causes = new Propagator.SetData[INIT_POINTS]; // indexed
+        // by location id, managed by Propagator
+    private Shared causesShared = null; // non-null if causes may be shared
+    Netlist handledNetlist = null; // numbering for handledStamps
+    int[] handledStamps = null; // step of last event for each end, managed by Propagator
 
     private static int lastId = 0;
     private int id = lastId++;
 
     public CircuitState(Project proj, Circuit circuit) {
+        this(proj, circuit, true);
+    }
+
+    // A snapshot's states do not follow changes to the circuit: they are
+    // drawn only until the next snapshot replaces them.
+    private CircuitState(Project proj, Circuit circuit, boolean listen) {
         this.proj = proj;
         this.circuit = circuit;
-        circuit.addCircuitListener(myCircuitListener);
+        if(listen) circuit.addCircuitListener(myCircuitListener);
     }
     
     Project getProject() {
@@ -113,6 +171,20 @@ public class CircuitState {
         return ret;
     }
     
+    /** Returns a copy of this state, with its substates, for drawing
+     * while this state goes on being simulated. Nothing propagates in
+     * the copy: it has no propagator, and it keeps this state's place
+     * in the tree of states without being added to it.
+     *
+     * Like a clone, the copy shares this state's values until either
+     * changes them. Being only drawn, it does not listen to the circuit
+     * and holds none of the causes or points used in propagating. */
+    public CircuitState createSnapshot() {
+        CircuitState ret = new CircuitState(proj, circuit, false);
+        ret.copyFrom(this, null);
+        return ret;
+    }
+
     private void copyFrom(CircuitState src, Propagator base) {
         this.base = base;
         this.parentComp = src.parentComp;
@@ -120,40 +192,67 @@ public class CircuitState {
         HashMap substateData = new HashMap();
         for(Iterator it = src.substates.iterator(); it.hasNext(); ) {
             CircuitState oldSub = (CircuitState) it.next();
-            CircuitState newSub = new CircuitState(src.proj, oldSub.circuit);
+            CircuitState newSub = new CircuitState(src.proj, oldSub.circuit,
+                    base != null);
             newSub.copyFrom(oldSub, base);
+            newSub.parentState = this;
             this.substates.add(newSub);
             substateData.put(oldSub, newSub);
         }
-        for(Iterator it = src.componentData.keySet().iterator(); it.hasNext(); ) {
-            Object key = it.next();
-            Object oldValue = src.componentData.get(key);
-            if(oldValue instanceof CircuitState) {
-                Object newValue = substateData.get(oldValue);
-                if(newValue != null) this.componentData.put(key, newValue);
-                else this.componentData.remove(key);
-            } else {
-                Object newValue;
-                if(oldValue instanceof ComponentState) {
-                    newValue = ((ComponentState) oldValue).clone();
-                } else {
-                    newValue = oldValue;
-                }
-                this.componentData.put(key, newValue);
-            }
+        ComponentData srcData = src.componentData;
+        ComponentData data = new ComponentData();
+        data.netlist = srcData.netlist;
+        data.values = new Object[srcData.values.length];
+        for(int i = 0; i < data.values.length; i++) {
+            data.values[i] = copyData(srcData.values[i], substateData);
         }
-        for(Iterator it = src.causes.keySet().iterator(); it.hasNext(); ) {
-            Object key = it.next();
-            Propagator.SetData oldValue = (Propagator.SetData) src.causes.get(key);
-            Propagator.SetData newValue = oldValue.cloneFor(this);
-            this.causes.put(key, newValue);
+        if(srcData.others != null) {
+            data.others = new HashMap();
+            for(Iterator it = srcData.others.entrySet().iterator(); it.hasNext(); ) {
+                java.util.Map.Entry entry = (java.util.Map.Entry) it.next();
+                Object newValue = copyData(entry.getValue(), substateData);
+                if(newValue != null) data.others.put(entry.getKey(), newValue);
+            }
         }
+        this.componentData = data;
+
+        // The values and causes are shared until one of the states is
+        // about to change them.
+        src.valuesShared = share(src.valuesShared);
+        this.valuesShared = src.valuesShared;
+        this.values = src.values;
         if(src.wireData != null) {
             this.wireData = (CircuitWires.State) src.wireData.clone();
         }
-        this.values.putAll(src.values);
+        if(base == null) {
+            // A snapshot never propagates, so it needs none of the causes
+            // or points that propagating uses.
+            this.causes = NO_CAUSES;
+            this.dirtyPoints = NO_POINTS;
+            this.dirtyPointFlags = NO_FLAGS;
+            this.changedPoints = NO_POINTS;
+            this.changedPointFlags = NO_FLAGS;
+            return;
+        }
+        src.causesShared = share(src.causesShared);
+        this.causesShared = src.causesShared;
+        this.causes = src.causes;
         this.dirtyComponents.addAll(src.dirtyComponents);
-        this.dirtyPoints.addAll(src.dirtyPoints);
+        this.dirtyPoints = (int[]) src.dirtyPoints.clone();
+        this.dirtyPointFlags = (boolean[]) src.dirtyPointFlags.clone();
+        this.dirtyPointCount = src.dirtyPointCount;
+        this.changedPoints = new int[src.changedPoints.length];
+        this.changedPointFlags = new boolean[src.changedPointFlags.length];
+    }
+
+    private static Object copyData(Object oldValue, HashMap substateData) {
+        if(oldValue instanceof CircuitState) {
+            return substateData.get(oldValue);
+        } else if(oldValue instanceof ComponentState) {
+            return ((ComponentState) oldValue).clone();
+        } else {
+            return oldValue;
+        }
     }
 
     public String toString() {
@@ -187,13 +286,61 @@ public class CircuitState {
         if(base != null) base.drawOscillatingPoints(context);
     }
 
+    /** Returns a rectangle enclosing every wire and component of this
+     * state's circuit that lies at a location whose value has changed
+     * since the last call, or null if the whole circuit should be
+     * redrawn, as after a reset. If nothing has changed, the bounds are
+     * empty. Any component whose appearance depends on its state is
+     * attached to a location whose value has changed.
+     *
+     * This should be called only from the thread propagating the
+     * state, as SimulatorListener methods are. */
+    public Bounds getChangedBounds() {
+        if(allChanged) {
+            allChanged = false;
+            for(int i = 0; i < changedPointCount; i++) {
+                changedPointFlags[changedPoints[i]] = false;
+            }
+            changedPointCount = 0;
+            return null;
+        }
+
+        CircuitPoints points = circuit.wires.points;
+        int idCount = points.getIdCount();
+        int xMin = Integer.MAX_VALUE;
+        int yMin = Integer.MAX_VALUE;
+        int xMax = Integer.MIN_VALUE;
+        int yMax = Integer.MIN_VALUE;
+        for(int i = 0; i < changedPointCount; i++) {
+            int point = changedPoints[i];
+            changedPointFlags[point] = false;
+            Location loc = point < idCount ? points.getLocation(point) : null;
+            if(loc == null) continue;
+            for(Iterator it = points.getComponents(loc).iterator(); it.hasNext(); ) {
+                Bounds bds = ((Component) it.next()).getBounds();
+                int x0 = bds.getX(); int x1 = x0 + bds.getWidth();
+                int y0 = bds.getY(); int y1 = y0 + bds.getHeight();
+                if(x0 < xMin) xMin = x0;
+                if(x1 > xMax) xMax = x1;
+                if(y0 < yMin) yMin = y0;
+                if(y1 > yMax) yMax = y1;
+            }
+        }
+        changedPointCount = 0;
+        if(xMin > xMax) return Bounds.EMPTY_BOUNDS;
+        return Bounds.create(xMin, yMin, xMax - xMin, yMax - yMin);
+    }
+
     public Object getData(Component comp) {
-        return componentData.get(comp);
+        ComponentData data = componentData;
+        int index = data.netlist == null ? -1 : data.netlist.getIndex(comp);
+        if(index >= 0) return data.values[index];
+        return data.others == null ? null : data.others.get(comp);
     }
 
     public void setData(Component comp, Object data) {
         if(comp instanceof Subcircuit) {
-            CircuitState oldState = (CircuitState) componentData.get(comp);
+            CircuitState oldState = (CircuitState) getData(comp);
             CircuitState newState = (CircuitState) data;
             if(oldState != newState) {
                 // There's something new going on with this subcircuit.
@@ -215,12 +362,57 @@ public class CircuitState {
                 }
             }
         }
-        componentData.put(comp, data);
+
+        Netlist netlist = circuit.getNetlist();
+        ComponentData compData = componentData;
+        if(compData.netlist != netlist) {
+            compData = layOutData(compData, netlist);
+            componentData = compData;
+        }
+        int index = netlist.getIndex(comp);
+        if(index >= 0) {
+            compData.values[index] = data;
+        } else if(data != null) {
+            if(compData.others == null) compData.others = new HashMap();
+            compData.others.put(comp, data);
+        } else if(compData.others != null) {
+            compData.others.remove(comp);
+        }
+    }
+
+    // Returns the data laid out for a new netlist. The data of components
+    // removed from the circuit is dropped.
+    private static ComponentData layOutData(ComponentData old, Netlist netlist) {
+        ComponentData ret = new ComponentData();
+        ret.netlist = netlist;
+        ret.values = new Object[netlist.getComponentCount()];
+        for(int i = 0; i < old.values.length; i++) {
+            Object value = old.values[i];
+            if(value == null) continue;
+            int index = netlist.getIndex(old.netlist.getComponent(i));
+            if(index >= 0) ret.values[index] = value;
+        }
+        if(old.others != null) {
+            for(Iterator it = old.others.entrySet().iterator(); it.hasNext(); ) {
+                java.util.Map.Entry entry = (java.util.Map.Entry) it.next();
+                int index = netlist.getIndex((Component) entry.getKey());
+                if(index >= 0) {
+                    ret.values[index] = entry.getValue();
+                } else {
+                    if(ret.others == null) ret.others = new HashMap();
+                    ret.others.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return ret;
     }
 
     public Value getValue(Location pt) {
-        Value ret = (Value) values.get(pt);
-        if(ret != null) return ret;
+        int point = getPointId(pt);
+        if(point >= 0 && point < values.length) {
+            Value ret = values[point];
+            if(ret != null) return ret;
+        }
 
         BitWidth wid = circuit.getWidth(pt);
         return Value.createUnknown(wid);
@@ -235,7 +427,8 @@ public class CircuitState {
     }
 
     public void markPointAsDirty(Location pt) {
-        dirtyPoints.add(pt);
+        int point = getPointId(pt);
+        if(point >= 0) markPointAsDirty(point);
     }
 
     //
@@ -244,19 +437,37 @@ public class CircuitState {
     boolean isSubstate() {
         return parentState != null;
     }
+    
+    /** Returns the id the circuit assigns to the given location, or -1
+     * if no component or wire reaches the location. */
+    int getPointId(Location pt) {
+        return circuit.wires.points.getId(pt);
+    }
+
+    void markPointAsDirty(int point) {
+        ensureCapacity(point);
+        if(!dirtyPointFlags[point]) {
+            dirtyPointFlags[point] = true;
+            dirtyPoints[dirtyPointCount] = point;
+            dirtyPointCount++;
+        }
+    }
 
     void processDirtyComponents() {
         if(!dirtyComponents.isEmpty()) {
             // This seeming wasted copy is to avoid ConcurrentModifications
             // if we used an iterator instead.
-            Object[] toProcess = dirtyComponents.toArray();
-            dirtyComponents.clear();
-            for(int i = 0; i < toProcess.length; i++) {
-                Component comp = (Component) toProcess[i];
-                comp.propagate(this);
-                if(comp instanceof Pin && parentState != null) {
-                    // should be propagated in superstate
-                    parentComp.propagate(parentState);
+            Netlist netlist = circuit.getNetlist();
+            if(base != null && base.isLevelized()) {
+                processLevelized(netlist);
+            } else {
+                Object[] toProcess = dirtyComponents.toArray();
+                dirtyComponents.clear();
+                for(int i = 0; i < toProcess.length; i++) {
+                    if(propagateComponent((Component) toProcess[i], netlist)) {
+                        // should be propagated in superstate
+                        parentComp.propagate(parentState);
+                    }
                 }
             }
         }
@@ -268,11 +479,64 @@ public class CircuitState {
         }
     }
 
-    void processDirtyPoints() {
-        if(!dirtyPoints.isEmpty()) {
-            circuit.wires.propagate(this, dirtyPoints);
-            dirtyPoints.clear();
+    // Propagates the component, returning whether the subcircuit holding
+    // this state should then be propagated in its superstate.
+    private boolean propagateComponent(Component comp, Netlist netlist) {
+        if(base != null) base.componentPropagated(comp);
+        if(!slots.propagate(netlist, comp)) comp.propagate(this);
+        return comp instanceof Pin && parentState != null;
+    }
+
+    // Propagates the dirty components ranked by the circuit's levels in
+    // order of rank, each taking effect before the next rank is
+    // propagated, and the others as usual. The ranks guarantee that no
+    // ranked component becomes dirty again; should that fail, it is
+    // propagated as usual once it has been propagated too many times.
+    //
+    // The subcircuit holding this state is propagated in its superstate
+    // once, after everything else: it sends all its outputs each time,
+    // and if it sent them after each rank, the superstate would handle
+    // only the first, stale values it received for this step.
+    private void processLevelized(Netlist netlist) {
+        CircuitLevels levels = circuit.getLevels();
+        if(levelQueue == null) levelQueue = new LevelQueue();
+        LevelQueue queue = levelQueue;
+        int budget = 2 * levels.size() + 16;
+        boolean pinsPropagated = false;
+        while(true) {
+            if(!dirtyComponents.isEmpty()) {
+                Object[] toProcess = dirtyComponents.toArray();
+                dirtyComponents.clear();
+                for(int i = 0; i < toProcess.length; i++) {
+                    Component comp = (Component) toProcess[i];
+                    int index = levels.getIndex(comp);
+                    if(index >= 0 && budget > 0) {
+                        queue.add(index);
+                    } else {
+                        pinsPropagated |= propagateComponent(comp, netlist);
+                    }
+                }
+            }
+            if(queue.isEmpty()) break;
+
+            int rank = levels.getRank(queue.peek());
+            while(!queue.isEmpty() && levels.getRank(queue.peek()) == rank) {
+                Component comp = levels.get(queue.remove());
+                budget--;
+                base.setImmediate(this, comp);
+                try {
+                    pinsPropagated |= propagateComponent(comp, netlist);
+                } finally {
+                    base.setImmediate(null, null);
+                }
+            }
+            processOwnDirtyPoints();
         }
+        if(pinsPropagated) parentComp.propagate(parentState);
+    }
+
+    void processDirtyPoints() {
+        processOwnDirtyPoints();
 
         Object[] subs = substates.toArray();
         for(int i = 0, n = subs.length; i < n; i++) {
@@ -281,16 +545,48 @@ public class CircuitState {
         }
     }
     
+    private void processOwnDirtyPoints() {
+        if(dirtyPointCount > 0) {
+            int[] points = dirtyPoints;
+            int count = dirtyPointCount;
+            circuit.wires.propagate(this, points, count);
+            for(int i = 0; i < count; i++) dirtyPointFlags[points[i]] = false;
+            dirtyPointCount = 0;
+        }
+    }
+
     void reset() {
         wireData = null;
-        for(Iterator it = componentData.keySet().iterator(); it.hasNext(); ) {
-            Object comp = (Object) it.next();
-            if(!(comp instanceof Subcircuit)) it.remove();
+        ComponentData data = componentData;
+        for(int i = 0; i < data.values.length; i++) {
+            if(!(data.netlist.getComponent(i) instanceof Subcircuit)) {
+                data.values[i] = null;
+            }
+        }
+        if(data.others != null) {
+            for(Iterator it = data.others.keySet().iterator(); it.hasNext(); ) {
+                Object comp = (Object) it.next();
+                if(!(comp instanceof Subcircuit)) it.remove();
+            }
+        }
+        if(valuesShared != null) {
+            release(valuesShared);
+            valuesShared = null;
+            values = new Value[values.length];
+        } else {
+            Arrays.fill(values, null);
         }
-        values.clear();
         dirtyComponents.clear();
-        dirtyPoints.clear();
-        causes.clear();
+        Arrays.fill(dirtyPointFlags, false);
+        dirtyPointCount = 0;
+        if(causesShared != null) {
+            release(causesShared);
+            causesShared = null;
+            causes = new Propagator.SetData[causes.length];
+        } else {
+            Arrays.fill(causes, null);
+        }
+        allChanged = true;
         markAllComponentsDirty();
         
         for(Iterator it = substates.iterator(); it.hasNext(); ) {
@@ -325,45 +621,163 @@ public class CircuitState {
 
     Value getComponentOutputAt(Location p) {
         // for CircuitWires - to get values, ignoring wires' contributions
-        Propagator.SetData cause_list
-            = (Propagator.SetData) causes.get(p);
+        int point = getPointId(p);
+        return point < 0 ? Value.NIL : getComponentOutputAt(point);
+    }
+
+    Value getComponentOutputAt(int point) {
+        Propagator.SetData cause_list = point < causes.length ? causes[point] : null;
         return Propagator.computeValue(cause_list);
     }
 
     Value getValueByWire(Location p) {
-        return (Value) values.get(p);
+        int point = getPointId(p);
+        return point < 0 ? null : getValueByWire(point);
+    }
+
+    Value getValueByWire(int point) {
+        return point < values.length ? values[point] : null;
+    }
+
+    void setValue(int point, Value val, Component cause, int delay) {
+        if(base != null) base.setValue(this, point, val, cause, delay);
     }
 
     void setValueByWire(Location p, Value v) {
+        int point = getPointId(p);
+        if(point >= 0) setValueByWire(point, v);
+    }
+
+    void setValueByWire(int point, Value v) {
         // for CircuitWires - to set value at point
         boolean changed;
+        ensureCapacity(point);
+        if(valuesShared != null) unshareValues();
+        Value old = values[point];
         if(v == Value.NIL) {
-            Object old = values.remove(p);
+            values[point] = null;
             changed = (old != null && old != Value.NIL);
         } else {
-            Object old = values.put(p, v);
+            values[point] = v;
             changed = !v.equals(old);
         }
         if(changed) {
-            boolean found = false;
-            for(Iterator it = circuit.getComponents(p).iterator(); it.hasNext(); ) {
-                Object obj = it.next();
-                if(!(obj instanceof Wire) && !(obj instanceof Splitter)) {
-                    found = true;
-                    Component c = (Component) obj;
-                    markComponentAsDirty(c);
-                }
+            Component[] attached = circuit.getNetlist().getAttached(point);
+            for(int i = 0; i < attached.length; i++) {
+                markComponentAsDirty(attached[i]);
             }
             // NOTE: this will cause a double-propagation on components
             // whose outputs have just changed.
             
-            if(found && base != null) base.locationTouched(this, p);
+            if(attached.length > 0 && base != null) {
+                base.locationTouched(this, circuit.wires.points.getLocation(point));
+            }
+            if(!changedPointFlags[point]) {
+                changedPointFlags[point] = true;
+                changedPoints[changedPointCount] = point;
+                changedPointCount++;
+            }
+        }
+    }
+    
+    void ensureCapacity(int point) {
+        if(point < values.length) return;
+        // grow to fit the whole circuit at once, rather than doubling
+        // repeatedly for each of many instances of a subcircuit
+        int n = Math.max(2 * values.length,
+                Math.max(point + 1, circuit.wires.points.getIdCount()));
+        Value[] newValues = new Value[n];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        Propagator.SetData[] newCauses = new Propagator.SetData[n];
+        System.arraycopy(causes, 0, newCauses, 0, causes.length);
+        int[] newDirty = new int[n];
+        System.arraycopy(dirtyPoints, 0, newDirty, 0, dirtyPointCount);
+        boolean[] newFlags = new boolean[n];
+        System.arraycopy(dirtyPointFlags, 0, newFlags, 0, dirtyPointFlags.length);
+        int[] newChanged = new int[n];
+        System.arraycopy(changedPoints, 0, newChanged, 0, changedPointCount);
+        boolean[] newChangedFlags = new boolean[n];
+        System.arraycopy(changedPointFlags, 0, newChangedFlags, 0, changedPointFlags.length);
+        if(valuesShared != null) {
+            release(valuesShared); // values are no longer shared
+            valuesShared = null;
+        }
+        values = newValues;
+        causes = newCauses; // but the lists of causes may be
+        dirtyPoints = newDirty;
+        dirtyPointFlags = newFlags;
+        changedPoints = newChanged;
+        changedPointFlags = newChangedFlags;
+    }
+
+    // called by the Propagator before it changes the causes at a point
+    void prepareCauses(int point) {
+        ensureCapacity(point);
+        if(causesShared != null) {
+            if(release(causesShared)) {
+                Propagator.SetData[] newCauses = new Propagator.SetData[causes.length];
+                for(int i = 0; i < causes.length; i++) {
+                    Propagator.SetData oldValue = causes[i];
+                    if(oldValue != null) newCauses[i] = oldValue.cloneList();
+                }
+                causes = newCauses;
+            }
+            causesShared = null;
         }
     }
 
     //
     // private methods
     // 
+    // Forgets the value and causes at each of the component's ends that no
+    // other component reaches. Such a location may have the id of one
+    // removed earlier, whose value and causes this state still holds.
+    private void clearNewPoints(Component comp) {
+        CircuitPoints points = circuit.wires.points;
+        if(comp instanceof Wire) {
+            Wire w = (Wire) comp;
+            clearNewPoint(points, w.getEnd0());
+            clearNewPoint(points, w.getEnd1());
+        } else {
+            for(Iterator it = comp.getEnds().iterator(); it.hasNext(); ) {
+                EndData end = (EndData) it.next();
+                if(end != null) clearNewPoint(points, end.getLocation());
+            }
+        }
+    }
+
+    private void clearNewPoint(CircuitPoints points, Location loc) {
+        if(points.getComponentCount(loc) != 1) return;
+        int point = points.getId(loc);
+        if(point < 0 || point >= values.length) return;
+        if(values[point] != null) {
+            if(valuesShared != null) unshareValues();
+            values[point] = null;
+        }
+        if(causes[point] != null) {
+            prepareCauses(point);
+            causes[point] = null;
+        }
+    }
+
+    private void unshareValues() {
+        if(release(valuesShared)) values = (Value[]) values.clone();
+        valuesShared = null;
+    }
+
+    private static Shared share(Shared shared) {
+        if(shared == null) shared = new Shared();
+        shared.users++;
+        return shared;
+    }
+
+    // Gives up a state's use of a shared array, returning whether another
+    // state may still be using it.
+    private static boolean release(Shared shared) {
+        shared.users--;
+        return shared.users > 0;
+    }
+
     private void markAllComponentsDirty() {
         dirtyComponents.addAll(circuit.getNonWires());
     }
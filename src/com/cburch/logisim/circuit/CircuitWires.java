@@ -5,6 +5,7 @@ package com.cburch.logisim.circuit;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,17 +44,34 @@ class CircuitWires {
 
     static class State {
         BundleMap bundleMap;
-        HashMap thr_values = new HashMap(); // WireThread -> Value
+        Value[] thr_values; // indexed by thread id
+
+        // bit sets of threads and bundles awaiting propagation,
+        // indexed by id; these are always clear between propagations
+        private long[] dirtyThreads;
+        private long[] dirtyBundles;
 
         State(BundleMap bundleMap) {
             this.bundleMap = bundleMap;
+            this.thr_values = new Value[bundleMap.threadCount];
+            this.dirtyThreads = new long[(bundleMap.threadCount + 63) >> 6];
+            this.dirtyBundles = new long[(bundleMap.bundleCount + 63) >> 6];
         }
         
         public Object clone() {
             State ret = new State(this.bundleMap);
-            ret.thr_values.putAll(this.thr_values);
+            System.arraycopy(this.thr_values, 0, ret.thr_values, 0,
+                    this.thr_values.length);
             return ret;
         }
+
+        void markThread(int id) {
+            dirtyThreads[id >> 6] |= 1L << (id & 63);
+        }
+
+        void markBundle(int id) {
+            dirtyBundles[id >> 6] |= 1L << (id & 63);
+        }
     }
 
     static class BundleMap {
@@ -61,6 +79,15 @@ class CircuitWires {
         HashMap pointBundles = new HashMap(); // Point -> WireBundle
         HashSet bundles = new HashSet();
         boolean isValid = true;
+        // Threads and bundles are numbered densely as they are added, and
+        // a map updated from another keeps its numbering: maps with the
+        // same idSpace agree on the id of every thread and bundle they
+        // share, and ids are never reused within an idSpace.
+        Object idSpace = new Object();
+        WireThread[] threadsById = new WireThread[16]; // null if dropped
+        int threadCount = 0;
+        WireBundle[] bundlesById = new WireBundle[16]; // null if dropped
+        int bundleCount = 0;
         // NOTE: It would make things more efficient if we also had
         // a set of just the first bundle in each tree.
         HashSet incompatibilityData = null;
@@ -109,6 +136,54 @@ class CircuitWires {
             return bundles;
         }
 
+        void copyIds(BundleMap base) {
+            idSpace = base.idSpace;
+            threadsById = (WireThread[]) base.threadsById.clone();
+            threadCount = base.threadCount;
+            bundlesById = (WireBundle[]) base.bundlesById.clone();
+            bundleCount = base.bundleCount;
+        }
+
+        void dropIds(WireBundle b) {
+            bundlesById[b.id] = null;
+            if(b.isValid() && b.threads != null) {
+                for(int i = 0; i < b.threads.length; i++) {
+                    threadsById[b.threads[i].id] = null;
+                }
+            }
+        }
+
+        void assignIds(WireBundle b, CircuitPoints points) {
+            if(bundleCount == bundlesById.length) {
+                WireBundle[] a = new WireBundle[2 * bundleCount];
+                System.arraycopy(bundlesById, 0, a, 0, bundleCount);
+                bundlesById = a;
+            }
+            b.id = bundleCount;
+            bundlesById[bundleCount] = b;
+            bundleCount++;
+
+            b.pointIds = new int[b.points.size()];
+            int j = 0;
+            for(Iterator it = b.points.iterator(); it.hasNext(); j++) {
+                b.pointIds[j] = points.getId((Location) it.next());
+            }
+
+            if(!b.isValid() || b.threads == null) return;
+            for(int i = 0; i < b.threads.length; i++) {
+                WireThread t = b.threads[i];
+                if(t.id >= 0) continue; // already numbered through another bundle
+                if(threadCount == threadsById.length) {
+                    WireThread[] a = new WireThread[2 * threadCount];
+                    System.arraycopy(threadsById, 0, a, 0, threadCount);
+                    threadsById = a;
+                }
+                t.id = threadCount;
+                threadsById[threadCount] = t;
+                threadCount++;
+            }
+        }
+
         synchronized void markComputed() {
             computed = true;
             notifyAll();
@@ -129,6 +204,9 @@ class CircuitWires {
     // derived data
     private Bounds bounds = Bounds.EMPTY_BOUNDS;
     private BundleMap bundleMap = null;
+    private HashSet changedLocations = new HashSet(); // Locations whose
+        // bundles may differ from those in bundleMap; guarded by this,
+        // since edits note changes while other threads take them
 
     CircuitWires() { }
 
@@ -189,8 +267,9 @@ class CircuitWires {
     //
     // action methods
     //
-    // NOTE: this could be made much more efficient in most cases to
-    // avoid voiding the bundle map.
+    // Rather than voiding the bundle map, each of these notes where the
+    // circuit changed, and the next call to getBundleMap recomputes only
+    // the bundles around those locations.
     void add(Component comp) {
         if(comp instanceof Wire) {
             addWire((Wire) comp);
@@ -198,7 +277,7 @@ class CircuitWires {
             splitters.add(comp);
         }
         points.add(comp);
-        voidBundleMap();
+        locationsChanged(comp);
     }
 
     void remove(Component comp) {
@@ -208,17 +287,17 @@ class CircuitWires {
             splitters.remove(comp);
         }
         points.remove(comp);
-        voidBundleMap();
+        locationsChanged(comp);
     }
     
     void add(Component comp, EndData end) {
         points.add(comp, end);
-        voidBundleMap();
+        if(end != null) locationChanged(end.getLocation());
     }
     
     void remove(Component comp, EndData end) {
         points.remove(comp, end);
-        voidBundleMap();
+        if(end != null) locationChanged(end.getLocation());
     }
 
     private void addWire(Wire w) {
@@ -245,95 +324,120 @@ class CircuitWires {
     //
     // utility methods
     //
-    void propagate(CircuitState circState, Set points) {
+    void propagate(CircuitState circState, int[] pointIds, int count) {
         BundleMap map = getBundleMap();
-        SmallSet dirtyThreads = new SmallSet(); // affected threads
+        boolean anyDirty = false;
 
         // get state, or create a new one if current state is outdated
         State s = circState.getWireData();
         if(s == null || s.bundleMap != map) {
             // if it is outdated, we need to compute for all threads
+            // except those that the map carried over from the state's
+            // map, whose values remain valid
+            State old = s;
             s = new State(map);
-            for(Iterator it = map.getBundles().iterator(); it.hasNext(); ) {
-                WireBundle b = (WireBundle) it.next();
-                WireThread[] th = b.threads;
-                if(b.isValid() && th != null) {
-                    for(int i = 0; i < th.length; i++) {
-                        dirtyThreads.add(th[i]);
-                    }
+            int known = 0;
+            if(old != null && old.bundleMap.idSpace == map.idSpace) {
+                known = old.thr_values.length;
+                System.arraycopy(old.thr_values, 0, s.thr_values, 0, known);
+            }
+            for(int i = known; i < map.threadCount; i++) {
+                if(map.threadsById[i] != null) {
+                    s.markThread(i);
+                    anyDirty = true;
                 }
             }
             circState.setWireData(s);
         }
 
         // determine affected threads, and set values for unwired points
-        for(Iterator it = points.iterator(); it.hasNext(); ) {
-            Location p = (Location) it.next();
+        for(int k = 0; k < count; k++) {
+            int id = pointIds[k];
+            Location p = points.getLocation(id);
             WireBundle pb = map.getBundleAt(p);
             if(pb == null) { // point is not wired
-                circState.setValueByWire(p, circState.getComponentOutputAt(p));
+                circState.setValueByWire(id, circState.getComponentOutputAt(id));
             } else {
                 WireThread[] th = pb.threads;
                 if(!pb.isValid() || th == null) {
                     // immediately propagate NILs across invalid bundles
-                    SmallSet pbPoints = pb.points;
-                    if(pbPoints == null) {
-                        circState.setValueByWire(p, Value.NIL);
-                    } else {
-                        for(Iterator it2 = pbPoints.iterator(); it2.hasNext(); ) {
-                            circState.setValueByWire((Location) it2.next(), Value.NIL);
-                        }
+                    int[] pbPoints = pb.pointIds;
+                    for(int i = 0; i < pbPoints.length; i++) {
+                        circState.setValueByWire(pbPoints[i], Value.NIL);
                     }
                 } else {
                     for(int i = 0; i < th.length; i++) {
-                        dirtyThreads.add(th[i]);
+                        s.markThread(th[i].id);
                     }
+                    anyDirty = true;
                 }
             }
         }
 
-        if(dirtyThreads.isEmpty()) return;
+        if(!anyDirty) return;
 
         // determine values of affected threads
-        HashSet bundles = new HashSet();
-        for(Iterator it = dirtyThreads.iterator(); it.hasNext(); ) {
-            WireThread t = (WireThread) it.next();
-            Value v = getThreadValue(circState, t);
-            s.thr_values.put(t, v);
-            bundles.addAll(t.getBundles());
+        long[] dirty = s.dirtyThreads;
+        for(int w = 0; w < dirty.length; w++) {
+            long bits = dirty[w];
+            if(bits == 0) continue;
+            dirty[w] = 0;
+            for(int i = w << 6; bits != 0; i++, bits >>>= 1) {
+                if((bits & 1) == 0) continue;
+                WireThread t = map.threadsById[i];
+                s.thr_values[i] = getThreadValue(circState, t);
+                for(Iterator it = t.getBundles().iterator(); it.hasNext(); ) {
+                    ThreadBundle tb = (ThreadBundle) it.next();
+                    s.markBundle(tb.b.id);
+                }
+            }
         }
 
         // now propagate values through circuit
-        for(Iterator it = bundles.iterator(); it.hasNext(); ) {
-            ThreadBundle tb = (ThreadBundle) it.next();
-            WireBundle b = tb.b;
+        dirty = s.dirtyBundles;
+        for(int w = 0; w < dirty.length; w++) {
+            long bits = dirty[w];
+            if(bits == 0) continue;
+            dirty[w] = 0;
+            for(int i = w << 6; bits != 0; i++, bits >>>= 1) {
+                if((bits & 1) != 0) propagateBundle(circState, s, map.bundlesById[i]);
+            }
+        }
+    }
 
-            Value bv = null;
-            if(!b.isValid() || b.threads == null) {
-                ; // do nothing
-            } else if(b.threads.length == 1) {
-                bv = (Value) s.thr_values.get(b.threads[0]);
-            } else {
-                Value[] tvs = new Value[b.threads.length];
-                boolean tvs_valid = true;
-                for(int i = 0; i < tvs.length; i++) {
-                    Value tv = (Value) s.thr_values.get(b.threads[i]);
-                    if(tv == null) { tvs_valid = false; break; }
-                    tvs[i] = tv;
-                }
-                if(tvs_valid) bv = Value.create(tvs);
+    private void propagateBundle(CircuitState circState, State s, WireBundle b) {
+        Value bv = null;
+        if(!b.isValid() || b.threads == null) {
+            ; // do nothing
+        } else if(b.threads.length == 1) {
+            bv = s.thr_values[b.threads[0].id];
+        } else {
+            Value[] tvs = new Value[b.threads.length];
+            boolean tvs_valid = true;
+            for(int i = 0; i < tvs.length; i++) {
+                Value tv = s.thr_values[b.threads[i].id];
+                if(tv == null) { tvs_valid = false; break; }
+                tvs[i] = tv;
             }
+            if(tvs_valid) bv = Value.create(tvs);
+        }
 
-            if(bv != null) {
-                for(Iterator it2 = b.points.iterator(); it2.hasNext(); ) {
-                    Location p = (Location) it2.next();
-                    circState.setValueByWire(p, bv);
-                }
+        if(bv != null) {
+            int[] ids = b.pointIds;
+            for(int i = 0; i < ids.length; i++) {
+                circState.setValueByWire(ids[i], bv);
             }
         }
     }
 
     void draw(ComponentDrawContext context, Collection hidden) {
+        draw(context, hidden, wires, points.getSplitLocations());
+    }
+
+    /** Draws the given wires, and the junction dots at whichever of the
+     * given locations have them. */
+    void draw(ComponentDrawContext context, Collection hidden,
+            Collection toDraw, Collection splitLocs) {
         boolean showState = context.getShowState();
         CircuitState state = context.getCircuitState();
         Graphics g = context.getGraphics();
@@ -343,7 +447,7 @@ class CircuitWires {
         BundleMap bmap = getBundleMap();
         boolean isValid = bmap.isValid();
         if(hidden == null || hidden.size() == 0) {
-            for(Iterator it = wires.iterator(); it.hasNext(); ) {
+            for(Iterator it = toDraw.iterator(); it.hasNext(); ) {
                 Wire w = (Wire) it.next();
                 Location s = w.e0;
                 Location t = w.e1;
@@ -359,7 +463,7 @@ class CircuitWires {
                 g.drawLine(s.getX(), s.getY(), t.getX(), t.getY());
             }
 
-            for(Iterator it = points.getSplitLocations().iterator(); it.hasNext(); ) {
+            for(Iterator it = splitLocs.iterator(); it.hasNext(); ) {
                 Location loc = (Location) it.next();
                 if(points.getComponentCount(loc) > 2) {
                     WireBundle wb = bmap.getBundleAt(loc);
@@ -377,7 +481,7 @@ class CircuitWires {
                 }
             }
         } else {
-            for(Iterator it = wires.iterator(); it.hasNext(); ) {
+            for(Iterator it = toDraw.iterator(); it.hasNext(); ) {
                 Wire w = (Wire) it.next();
                 if(!hidden.contains(w)) {
                     Location s = w.e0;
@@ -398,7 +502,7 @@ class CircuitWires {
             // this is just an approximation, but it's good enough since
             // the problem is minor, and hidden only exists for a short
             // while at a time anway.
-            for(Iterator it = points.getSplitLocations().iterator(); it.hasNext(); ) {
+            for(Iterator it = splitLocs.iterator(); it.hasNext(); ) {
                 Location loc = (Location) it.next();
                 if(points.getComponentCount(loc) > 2) {
                     int icount = 0;
@@ -427,23 +531,61 @@ class CircuitWires {
     //
     // helper methods
     //
-    private void voidBundleMap() {
-        bundleMap = null;
+    private synchronized void locationChanged(Location loc) {
+        changedLocations.add(loc);
+    }
+
+    private synchronized void locationsChanged(Component comp) {
+        if(comp instanceof Wire) {
+            Wire w = (Wire) comp;
+            changedLocations.add(w.e0);
+            changedLocations.add(w.e1);
+        } else {
+            for(Iterator it = comp.getEnds().iterator(); it.hasNext(); ) {
+                EndData end = (EndData) it.next();
+                if(end != null) changedLocations.add(end.getLocation());
+            }
+        }
     }
 
-    private BundleMap getBundleMap() {
+    BundleMap getBundleMap() {
         // Maybe we already have a valid bundle map (or maybe
         // one is in progress).
-        BundleMap ret = bundleMap;
-        if(ret != null) {
+        // The changes are taken and the new map put in place together, so
+        // that a change noted meanwhile goes to the next map, and no other
+        // thread takes the old map as current.
+        BundleMap base;
+        BundleMap ret;
+        HashSet changed;
+        synchronized(this) {
+            base = bundleMap;
+            if(base != null && changedLocations.isEmpty()) {
+                ret = base;
+                changed = null;
+            } else {
+                // Ok, we have to create our own. We build a new map even
+                // when updating, since another thread may be using the
+                // old one.
+                ret = new BundleMap();
+                bundleMap = ret;
+                changed = changedLocations;
+                changedLocations = new HashSet();
+            }
+        }
+        if(changed == null) {
             ret.waitUntilComputed();
             return ret;
         }
         try {
-            // Ok, we have to create our own.
-            ret = new BundleMap();
-            bundleMap = ret;
-            computeBundleMap(ret);
+            if(base != null) base.waitUntilComputed();
+            if(base == null || !base.isValid()
+                    || 4 * changed.size() > base.pointBundles.size()
+                    || base.bundleCount > 2 * base.bundles.size() + 64) {
+                // (the last case renumbers once many ids have been dropped)
+                computeBundleMap(ret);
+            } else {
+                updateBundleMap(ret, base, changed);
+            }
         } catch(RuntimeException ex) {
             ret.invalidate();
             ret.markComputed();
@@ -457,6 +599,98 @@ class CircuitWires {
 
     // To be called by getBundleMap only
     private void computeBundleMap(BundleMap ret) {
+        computeBundles(ret, wires, splitters);
+        for(Iterator it = ret.getBundles().iterator(); it.hasNext(); ) {
+            ret.assignIds((WireBundle) it.next(), points);
+        }
+        computeWidthIncompatibilityData(ret);
+    }
+
+    // To be called by getBundleMap only. Copies base into ret, except
+    // that the bundles near the changed locations are computed afresh.
+    // Bundles and threads elsewhere are shared with base, so states
+    // can keep the values they have computed for those threads.
+    private void updateBundleMap(BundleMap ret, BundleMap base, Set changed) {
+        // Find the locations whose bundles may have changed: those
+        // connected to a changed location, either through the wires
+        // and splitters now in the circuit or through the bundles and
+        // threads of the old map.
+        HashSet region = new HashSet(changed); // of Locations
+        HashSet oldBundles = new HashSet(); // of WireBundles
+        ArrayList toVisit = new ArrayList(changed);
+        while(!toVisit.isEmpty()) {
+            Location loc = (Location) toVisit.remove(toVisit.size() - 1);
+            WireBundle b = base.getBundleAt(loc);
+            if(b != null && oldBundles.add(b)) {
+                addToRegion(region, toVisit, b.points);
+                if(b.threads != null) {
+                    for(int i = 0; i < b.threads.length; i++) {
+                        for(Iterator it = b.threads[i].getBundles().iterator(); it.hasNext(); ) {
+                            ThreadBundle tb = (ThreadBundle) it.next();
+                            addToRegion(region, toVisit, tb.b.points);
+                        }
+                    }
+                }
+            }
+            for(Iterator it = points.getComponents(loc).iterator(); it.hasNext(); ) {
+                Object comp = it.next();
+                if(comp instanceof Wire) {
+                    Wire w = (Wire) comp;
+                    if(region.add(w.e0)) toVisit.add(w.e0);
+                    if(region.add(w.e1)) toVisit.add(w.e1);
+                } else if(comp instanceof Splitter) {
+                    for(Iterator it2 = ((Splitter) comp).getEnds().iterator(); it2.hasNext(); ) {
+                        Location p = ((EndData) it2.next()).getLocation();
+                        if(region.add(p)) toVisit.add(p);
+                    }
+                }
+            }
+        }
+
+        // compute bundles for the region on its own, as if its wires
+        // and splitters made up the entire circuit
+        HashSet regionWires = new HashSet();
+        HashSet regionSplitters = new HashSet();
+        for(Iterator it = region.iterator(); it.hasNext(); ) {
+            Location loc = (Location) it.next();
+            for(Iterator it2 = points.getComponents(loc).iterator(); it2.hasNext(); ) {
+                Object comp = it2.next();
+                if(comp instanceof Wire) regionWires.add(comp);
+                else if(comp instanceof Splitter) regionSplitters.add(comp);
+            }
+        }
+        BundleMap part = new BundleMap();
+        computeBundles(part, regionWires, regionSplitters);
+
+        // and now splice them in place of the region's old bundles
+        ret.pointBundles.putAll(base.pointBundles);
+        ret.bundles.addAll(base.bundles);
+        ret.bundles.removeAll(oldBundles);
+        for(Iterator it = region.iterator(); it.hasNext(); ) {
+            ret.pointBundles.remove(it.next());
+        }
+        ret.pointBundles.putAll(part.pointBundles);
+        ret.bundles.addAll(part.bundles);
+        ret.copyIds(base);
+        for(Iterator it = oldBundles.iterator(); it.hasNext(); ) {
+            ret.dropIds((WireBundle) it.next());
+        }
+        for(Iterator it = part.getBundles().iterator(); it.hasNext(); ) {
+            ret.assignIds((WireBundle) it.next(), points);
+        }
+        computeWidthIncompatibilityData(ret);
+    }
+
+    private static void addToRegion(HashSet region, ArrayList toVisit,
+            SmallSet locs) {
+        for(Iterator it = locs.iterator(); it.hasNext(); ) {
+            Object loc = it.next();
+            if(region.add(loc)) toVisit.add(loc);
+        }
+    }
+
+    private void computeBundles(BundleMap ret, Collection wires,
+            Collection splitters) {
         // make a WireBundle object for each tree of connected wires
         for(Iterator it = wires.iterator(); it.hasNext(); ) {
             Wire w = (Wire) it.next();
@@ -566,7 +800,9 @@ class CircuitWires {
                 }
             }
         }
+    }
 
+    private void computeWidthIncompatibilityData(BundleMap ret) {
         // All threads are sewn together! Compute the exception set before leaving
         Collection exceptions = points.getWidthIncompatibilityData();
         if(exceptions != null && exceptions.size() > 0) {
@@ -586,10 +822,9 @@ class CircuitWires {
         Iterator it = t.getBundles().iterator();
         while(it.hasNext()) {
             ThreadBundle tb = (ThreadBundle) it.next();
-            Iterator it2 = tb.b.points.iterator();
-            while(it2.hasNext()) {
-                Location p = (Location) it2.next();
-                Value val = state.getComponentOutputAt(p);
+            int[] ids = tb.b.pointIds;
+            for(int i = 0; i < ids.length; i++) {
+                Value val = state.getComponentOutputAt(ids[i]);
                 if(val != null && val != Value.NIL) {
                     ret = ret.combine(val.get(tb.loc));
                 }
@@ -0,0 +1,81 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+
+/** The values at the ends of a component being propagated through
+ * <code>SlotPropagator</code>, indexed as the component's ends are.
+ * Each CircuitState keeps one, which it binds to each such component in
+ * turn using the offsets in the circuit's Netlist. */
+public class EndSlots {
+    private CircuitState state;
+    private Component comp = null;
+    private int[] points = null; // location id of each end, from Netlist
+    private int offset = 0;
+    private int count = 0;
+    private Value[][] buffers = new Value[8][];
+
+    EndSlots(CircuitState state) {
+        this.state = state;
+    }
+
+    /** Propagates the component through its SlotPropagator, returning
+     * false if it has none or is not in the netlist. */
+    boolean propagate(Netlist netlist, Component comp) {
+        Netlist.Entry entry = netlist.getEntry(comp);
+        if(entry == null || entry.propagator == null) return false;
+        this.comp = comp;
+        this.points = netlist.getEndPoints();
+        this.offset = entry.offset;
+        this.count = entry.count;
+        entry.propagator.propagate(state, this);
+        this.comp = null;
+        return true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Returns the value at the end with the given index. */
+    public Value get(int end) {
+        int point = end < count ? points[offset + end] : -1;
+        if(point >= 0) {
+            Value ret = state.getValueByWire(point);
+            if(ret != null) return ret;
+        }
+        return state.getValue(comp.getEnd(end).getLocation());
+    }
+
+    /** Sends a value from the end with the given index, to arrive after
+     * the given delay. */
+    public void set(int end, Value val, int delay) {
+        int point = end < count ? points[offset + end] : -1;
+        if(point >= 0) {
+            state.setValue(point, val, comp, delay);
+        } else {
+            state.setValue(comp.getEnd(end).getLocation(), val, comp, delay);
+        }
+    }
+
+    /** Returns an array of the given length, filled with nulls, for the
+     * component to use while propagating; it is reused afterwards. */
+    public Value[] getBuffer(int length) {
+        if(length >= buffers.length) {
+            Value[][] newBuffers = new Value[length + 1][];
+            System.arraycopy(buffers, 0, newBuffers, 0, buffers.length);
+            buffers = newBuffers;
+        }
+        Value[] ret = buffers[length];
+        if(ret == null) {
+            ret = new Value[length];
+            buffers[length] = ret;
+        } else {
+            for(int i = 0; i < length; i++) ret[i] = null;
+        }
+        return ret;
+    }
+}
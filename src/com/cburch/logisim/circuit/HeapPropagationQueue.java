@@ -0,0 +1,98 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.util.PQueue;
+
+/** The original propagation queue, which allocates an object for each
+ * event and keeps them in a binary heap. */
+class HeapPropagationQueue implements PropagationQueue {
+    private static class Event implements Comparable {
+        int time;
+        int serialNumber;
+        CircuitState state;
+        int point;
+        Component cause;
+        Value val;
+
+        Event(int time, int serialNumber, CircuitState state,
+                int point, Component cause, Value val) {
+            this.time = time;
+            this.serialNumber = serialNumber;
+            this.state = state;
+            this.point = point;
+            this.cause = cause;
+            this.val = val;
+        }
+
+        public int compareTo(Object other) {
+            Event o = (Event) other;
+            // Yes, these subtractions may overflow. This is intentional, as it
+            // avoids potential wraparound problems as the counters increment.
+            int ret = o.time - this.time;
+            if(ret != 0) return ret;
+            return o.serialNumber - this.serialNumber;
+        }
+    }
+
+    private PQueue heap = new PQueue();
+    private int size = 0;
+    private int serialNumber = 0;
+    private Event current = null;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        heap.clear();
+        size = 0;
+        current = null;
+    }
+
+    public void add(int time, CircuitState state, int point,
+            Component cause, Value val) {
+        heap.add(new Event(time, serialNumber, state, point, cause, val));
+        serialNumber++;
+        size++;
+    }
+
+    public int peekTime() {
+        return ((Event) heap.peek()).time;
+    }
+
+    public boolean remove(int time) {
+        Event e = (Event) heap.peek();
+        if(e == null || e.time != time) {
+            current = null;
+            return false;
+        }
+        heap.remove();
+        size--;
+        current = e;
+        return true;
+    }
+
+    public CircuitState getState() {
+        return current.state;
+    }
+
+    public int getPoint() {
+        return current.point;
+    }
+
+    public Component getCause() {
+        return current.cause;
+    }
+
+    public Value getValue() {
+        return current.val;
+    }
+}
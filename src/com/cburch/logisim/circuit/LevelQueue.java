@@ -0,0 +1,70 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+/** The levelized components of a CircuitState waiting to be propagated,
+ * identified by their positions in a CircuitLevels. Since the positions
+ * are in order of rank, removing the least position removes a component
+ * of the least rank waiting. A component waits at most once at a time. */
+class LevelQueue {
+    private int[] heap = new int[16];
+    private int size = 0;
+    private boolean[] queued = new boolean[0];
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int peek() {
+        return heap[0];
+    }
+
+    void add(int index) {
+        if(index >= queued.length) {
+            boolean[] a = new boolean[Math.max(index + 1, 2 * queued.length)];
+            System.arraycopy(queued, 0, a, 0, queued.length);
+            queued = a;
+        }
+        if(queued[index]) return;
+        queued[index] = true;
+        if(size == heap.length) {
+            int[] a = new int[2 * size];
+            System.arraycopy(heap, 0, a, 0, size);
+            heap = a;
+        }
+        int i = size++;
+        while(i > 0) {
+            int parent = (i - 1) >> 1;
+            if(heap[parent] <= index) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = index;
+    }
+
+    int remove() {
+        int ret = heap[0];
+        queued[ret] = false;
+        size--;
+        if(size > 0) {
+            int last = heap[size];
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) break;
+                if(child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if(heap[child] >= last) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+        }
+        return ret;
+    }
+
+    void clear() {
+        for(int i = 0; i < size; i++) queued[heap[i]] = false;
+        size = 0;
+    }
+}
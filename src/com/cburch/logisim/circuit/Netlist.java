@@ -0,0 +1,177 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.EndData;
+
+/** A compiled description of how a circuit's components connect to its
+ * locations, so that the propagator can work with integer indices rather
+ * than walking the component graph. Locations are identified by the ids
+ * that CircuitPoints assigns; in addition, each end of each component
+ * gets a dense end id, and the netlist records the location id of each
+ * end along with the components attached at each location.
+ *
+ * A Circuit compiles its Netlist when first requested and discards it
+ * whenever its components or their ends change; the netlist is shared
+ * by every CircuitState for the circuit, including all the states for
+ * instances of it as a subcircuit. Per-state arrays indexed by end id
+ * should be discarded along with the netlist; location ids remain valid
+ * across recompilation. Each component other than a wire also gets a
+ * dense index, by which each state keeps the components' data.
+ *
+ * The netlist also records which components can be propagated through
+ * SlotPropagator, so that the feature is looked up once per
+ * compilation rather than once per propagation. */
+class Netlist {
+    static class Entry {
+        int index; // index of the component
+        int offset; // end id of the component's first end
+        int count; // number of ends
+        SlotPropagator propagator; // null if the component has none
+
+        Entry(int index, int offset, int count, SlotPropagator propagator) {
+            this.index = index;
+            this.offset = offset;
+            this.count = count;
+            this.propagator = propagator;
+        }
+    }
+
+    private static final Component[] NO_COMPONENTS = new Component[0];
+
+    private HashMap entries = new HashMap(); // Component -> Entry
+    private Component[] components; // indexed by component index
+    private int endCount = 0;
+    private int[] endPoints; // location id of each end, indexed by end id
+    private Component[][] attached; // indexed by location id
+    private int pointCount;
+
+    Netlist(Circuit circuit) {
+        CircuitPoints points = circuit.wires.points;
+        pointCount = points.getIdCount();
+
+        components = new Component[circuit.getNonWires().size()];
+        int index = 0;
+        for(Iterator it = circuit.getNonWires().iterator(); it.hasNext(); index++) {
+            Component comp = (Component) it.next();
+            int count = comp.getEnds().size();
+            Object propagator = comp.getFeature(SlotPropagator.class);
+            components[index] = comp;
+            entries.put(comp, new Entry(index, endCount, count,
+                propagator instanceof SlotPropagator ? (SlotPropagator) propagator : null));
+            endCount += count;
+        }
+
+        endPoints = new int[endCount];
+        int[] attachedCount = new int[pointCount];
+        for(Iterator it = circuit.getNonWires().iterator(); it.hasNext(); ) {
+            Component comp = (Component) it.next();
+            int offset = ((Entry) entries.get(comp)).offset;
+            boolean isSplitter = comp instanceof Splitter;
+            List ends = comp.getEnds();
+            for(int i = 0, n = ends.size(); i < n; i++) {
+                EndData end = (EndData) ends.get(i);
+                int point = end == null ? -1 : points.getId(end.getLocation());
+                if(point >= pointCount) point = -1; // added since we started
+                endPoints[offset + i] = point;
+                if(point >= 0 && !isSplitter && !endsEarlierAt(ends, i, point, points)) {
+                    attachedCount[point]++;
+                }
+            }
+        }
+
+        attached = new Component[pointCount][];
+        for(int i = 0; i < pointCount; i++) {
+            int n = attachedCount[i];
+            attached[i] = n == 0 ? NO_COMPONENTS : new Component[n];
+            attachedCount[i] = 0;
+        }
+        for(Iterator it = circuit.getNonWires().iterator(); it.hasNext(); ) {
+            Component comp = (Component) it.next();
+            if(comp instanceof Splitter) continue;
+            int offset = ((Entry) entries.get(comp)).offset;
+            List ends = comp.getEnds();
+            for(int i = 0, n = ends.size(); i < n; i++) {
+                int point = endPoints[offset + i];
+                if(point >= 0 && !endsEarlierAt(ends, i, point, points)) {
+                    attached[point][attachedCount[point]] = comp;
+                    attachedCount[point]++;
+                }
+            }
+        }
+    }
+
+    private static boolean endsEarlierAt(List ends, int index, int point,
+            CircuitPoints points) {
+        for(int j = 0; j < index; j++) {
+            EndData end = (EndData) ends.get(j);
+            if(end != null && points.getId(end.getLocation()) == point) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getEndCount() {
+        return endCount;
+    }
+
+    int getPointCount() {
+        return pointCount;
+    }
+
+    int getComponentCount() {
+        return components.length;
+    }
+
+    Component getComponent(int index) {
+        return components[index];
+    }
+
+    /** Returns the given component's index, or -1 if the component is not
+     * in this netlist. */
+    int getIndex(Component comp) {
+        Entry entry = (Entry) entries.get(comp);
+        return entry == null ? -1 : entry.index;
+    }
+
+    /** Returns the id of the given component's end at the given location
+     * id, or -1 if the component has no such end in this circuit. */
+    int getEndId(Component comp, int point) {
+        Entry entry = (Entry) entries.get(comp);
+        if(entry == null) return -1;
+        int start = entry.offset;
+        int stop = start + comp.getEnds().size();
+        if(stop > endCount) return -1; // ends changed since compiled
+        for(int i = start; i < stop; i++) {
+            if(endPoints[i] == point) return i;
+        }
+        return -1;
+    }
+
+    /** Returns where the given component's ends are numbered, or null if
+     * the component is not in this netlist or its ends have changed. */
+    Entry getEntry(Component comp) {
+        Entry ret = (Entry) entries.get(comp);
+        if(ret == null || ret.count != comp.getEnds().size()) return null;
+        return ret;
+    }
+
+    /** Returns the location id of each end, indexed by end id. The array
+     * must not be modified. */
+    int[] getEndPoints() {
+        return endPoints;
+    }
+
+    /** Returns the components other than wires and splitters that have an
+     * end at the given location id. The array must not be modified. */
+    Component[] getAttached(int point) {
+        return point < pointCount ? attached[point] : NO_COMPONENTS;
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Arrays;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+
+/** Watches a propagation for the moment it begins to repeat itself, so
+ * that an oscillating circuit can be recognized after a few times
+ * around its loop rather than only once the simulation limit runs out.
+ *
+ * After each step, the propagator reports a fingerprint combining a hash
+ * of every value that components are currently sending, a hash of the
+ * events the step processed, how far the clock advanced and how many
+ * events remain. Once the fingerprints of the latest steps have matched
+ * those of the steps one period earlier for two whole periods, the
+ * propagation is taken to be repeating with that period; the period
+ * found is the shortest that matches, so that the loop is minimal. A
+ * loop taking up to MAX_HISTORY steps can be recognized, each step
+ * costing the same however long the loop.
+ *
+ * Components may hold state that the fingerprints cannot see, but for
+ * such state to keep a repeating circuit from being truly periodic, it
+ * would have to change without changing any value the component sends.
+ * Random delays can break a repetition, though, so the propagator does
+ * not use a detector while they are enabled. */
+class OscillationDetector {
+    private static final int INIT_HISTORY = 256;
+    private static final int MAX_HISTORY = 1 << 15; // longest period detected
+    private static final int MIN_MATCHES = 8; // fewest steps for a match
+
+    // These two are maintained by the Propagator. The driver hash is the
+    // exclusive-or of the hashes of every (state, location, cause, value)
+    // that a component is sending; the event hash sums the hashes of the
+    // events processed during the current step.
+    long driverHash = 0;
+    long eventHash = 0;
+
+    // The fingerprints of recent steps, indexed by step modulo the
+    // length, which doubles when a propagation runs longer, up to
+    // MAX_HISTORY. Steps are counted from the detector's creation, so
+    // that nothing needs clearing between propagations.
+    private long[] history = new long[INIT_HISTORY];
+    // The step at which each fingerprint was last seen, so that a
+    // repetition is found without searching the history; a slot holds
+    // one fingerprint, chosen by its low bits, and the latest overwrites.
+    private long[] seenPrints = new long[2 * INIT_HISTORY];
+    private long[] seenSteps = newSeenSteps(2 * INIT_HISTORY);
+    private long step = 0; // steps recorded so far
+    private long start = 0; // first step of the current propagation
+    private int lastClock = 0;
+    private int period = 0; // current candidate period, or 0 if none
+    private int matched = 0; // steps matching the candidate so far
+
+    /** Starts watching a new propagation. */
+    void clear(int clock) {
+        eventHash = 0;
+        start = step;
+        lastClock = clock;
+        period = 0;
+        matched = 0;
+    }
+
+    /** Records that a step is complete, returning the period with which
+     * the propagation is repeating, or 0 if it does not appear to be. */
+    int stepCompleted(int clock, int pending) {
+        long fingerprint = mix(driverHash ^ mix(eventHash
+            + 31L * (clock - lastClock) + 961L * pending));
+        eventHash = 0;
+        lastClock = clock;
+        if(step - start == history.length && history.length < MAX_HISTORY) {
+            growHistory();
+        }
+        history[(int) (step % history.length)] = fingerprint;
+        long seen = see(fingerprint, step);
+        step++;
+
+        if(period > 0) {
+            long earlier = step - 1 - period;
+            if(history[(int) (earlier % history.length)] == fingerprint) {
+                matched++;
+                if(matched >= 2 * period && matched >= MIN_MATCHES) return period;
+                return 0;
+            }
+            period = 0;
+            matched = 0;
+        }
+        // the latest repetition gives the shortest period, so that the
+        // loop is minimal
+        if(seen >= start && step - 1 - seen < history.length) {
+            period = (int) (step - 1 - seen);
+            matched = 1;
+        }
+        return 0;
+    }
+
+    // Notes that the fingerprint was seen at the given step, returning
+    // the step at which it was last seen before, or -1 if unknown.
+    private long see(long fingerprint, long at) {
+        int slot = (int) fingerprint & (seenPrints.length - 1);
+        long ret = seenPrints[slot] == fingerprint ? seenSteps[slot] : -1;
+        seenPrints[slot] = fingerprint;
+        seenSteps[slot] = at;
+        return ret;
+    }
+
+    // Doubles the history, keeping the current propagation's steps.
+    private void growHistory() {
+        long[] oldHistory = history;
+        history = new long[2 * oldHistory.length];
+        seenPrints = new long[2 * history.length];
+        seenSteps = newSeenSteps(2 * history.length);
+        for(long s = start; s < step; s++) {
+            long fingerprint = oldHistory[(int) (s % oldHistory.length)];
+            history[(int) (s % history.length)] = fingerprint;
+            see(fingerprint, s);
+        }
+    }
+
+    private static long[] newSeenSteps(int length) {
+        long[] ret = new long[length];
+        Arrays.fill(ret, -1);
+        return ret;
+    }
+
+    static long hash(CircuitState state, int point, Component cause, Value val) {
+        long ret = ((long) System.identityHashCode(state) << 32)
+            | (point & 0xFFFFFFFFL);
+        ret = mix(ret) + System.identityHashCode(cause);
+        ret = mix(ret) + (val == null ? 0 : val.hashCode());
+        return mix(ret);
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,23 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Map;
+
+public interface ParallelComputer {
+    /**
+     * Propagates 64 simulations through a component at once.
+     * The parameter is a map from <code>Location</code>s to
+     * <code>ParallelValue</code>s. The method will use this to
+     * determine the values coming into the component, and it
+     * should place the values that the component sends into
+     * the map at its output locations. Lane <i>k</i> of each
+     * output must be what the component would send if its
+     * inputs held lane <i>k</i> of each input.
+     *
+     * If the component cannot be computed this way, it throws
+     * <code>UnsupportedOperationException</code>.
+     */
+    public void computeParallel(Map valueMap);
+}
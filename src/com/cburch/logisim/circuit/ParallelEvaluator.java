@@ -0,0 +1,294 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.cburch.logisim.analyze.model.Entry;
+import com.cburch.logisim.analyze.model.TruthTable;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.EndData;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
+
+/** Computes the rows of a truth table 64 at a time, with each row
+ * simulated in its own lane of ParallelValues. This applies only to
+ * circuits whose components all support ParallelComputer and whose
+ * components can be ordered so that each is computed after every
+ * component it depends on; for such circuits, each component needs to
+ * be computed only once per batch of rows, and the result is the same
+ * as the stable state the Propagator would reach for each row. */
+class ParallelEvaluator {
+    // A component to compute, along with where its values come from
+    // and go.
+    private static class Step {
+        Component comp;
+        ParallelComputer computer; // null for input pins
+        int inputPin = -1; // column if an input pin
+        Location[] inputs;
+        Location[] outputs;
+        ArrayList dependents = new ArrayList();
+        int unmet = 0;
+
+        Step(Component comp) {
+            this.comp = comp;
+        }
+    }
+
+    /** Returns an evaluator for the given circuit and pins, or
+     * <code>null</code> if the circuit cannot be evaluated this way. */
+    static ParallelEvaluator create(Circuit circuit, List inputPins,
+            List outputPins) {
+        CircuitWires.BundleMap map = circuit.wires.getBundleMap();
+        if(!map.isValid()) return null;
+        HashSet incompatibilities = map.getWidthIncompatibilityData();
+        if(incompatibilities != null && !incompatibilities.isEmpty()) return null;
+
+        ArrayList steps = new ArrayList();
+        for(Iterator it = circuit.getNonWires().iterator(); it.hasNext(); ) {
+            Component comp = (Component) it.next();
+            Step step = new Step(comp);
+            ArrayList ins = new ArrayList();
+            ArrayList outs = new ArrayList();
+            if(comp instanceof Pin) {
+                Pin pin = (Pin) comp;
+                if(pin.getEnd(0).getWidth().getWidth() != 1) return null;
+                if(pin.isInputPin()) {
+                    step.inputPin = inputPins.indexOf(pin);
+                    if(step.inputPin < 0) return null;
+                    outs.add(pin.getEnd(0).getLocation());
+                } else {
+                    continue;
+                }
+            } else if(comp instanceof Splitter) {
+                continue; // splitters are handled by the wire threads
+            } else {
+                boolean sends = false;
+                for(Iterator eit = comp.getEnds().iterator(); eit.hasNext(); ) {
+                    EndData end = (EndData) eit.next();
+                    if(end == null) continue;
+                    int type = end.getType();
+                    if(type == EndData.INPUT_ONLY) {
+                        ins.add(end.getLocation());
+                    } else if(type == EndData.OUTPUT_ONLY) {
+                        outs.add(end.getLocation());
+                        sends = true;
+                    } else {
+                        return null;
+                    }
+                }
+                if(!sends) continue; // probes and the like affect nothing
+                step.computer = (ParallelComputer) comp.getFeature(ParallelComputer.class);
+                if(step.computer == null) return null;
+            }
+            step.inputs = (Location[]) ins.toArray(new Location[ins.size()]);
+            step.outputs = (Location[]) outs.toArray(new Location[outs.size()]);
+            steps.add(step);
+        }
+
+        Step[] order = sort(steps, map);
+        if(order == null) return null;
+        return new ParallelEvaluator(circuit, map, order, inputPins, outputPins);
+    }
+
+    // Orders the steps so that each follows all steps sending values
+    // into any wire thread or point it reads, or returns null if this
+    // is impossible. Since a bundle's threads are taken together, this
+    // can find a cycle through a splitter that the bits avoid, in which
+    // case we simply give up on the circuit.
+    private static Step[] sort(ArrayList steps, CircuitWires.BundleMap map) {
+        HashMap senders = new HashMap(); // WireThread or Location -> list of Steps
+        for(int i = 0; i < steps.size(); i++) {
+            Step step = (Step) steps.get(i);
+            for(int j = 0; j < step.outputs.length; j++) {
+                Object[] nets = getNets(step.outputs[j], map);
+                for(int k = 0; k < nets.length; k++) {
+                    ArrayList list = (ArrayList) senders.get(nets[k]);
+                    if(list == null) {
+                        list = new ArrayList();
+                        senders.put(nets[k], list);
+                    }
+                    list.add(step);
+                }
+            }
+        }
+        for(int i = 0; i < steps.size(); i++) {
+            Step step = (Step) steps.get(i);
+            for(int j = 0; j < step.inputs.length; j++) {
+                Object[] nets = getNets(step.inputs[j], map);
+                for(int k = 0; k < nets.length; k++) {
+                    ArrayList list = (ArrayList) senders.get(nets[k]);
+                    if(list == null) continue;
+                    for(int m = 0; m < list.size(); m++) {
+                        Step sender = (Step) list.get(m);
+                        sender.dependents.add(step);
+                        step.unmet++;
+                    }
+                }
+            }
+        }
+
+        Step[] ret = new Step[steps.size()];
+        int count = 0;
+        for(int i = 0; i < steps.size(); i++) {
+            Step step = (Step) steps.get(i);
+            if(step.unmet == 0) {
+                ret[count] = step;
+                count++;
+            }
+        }
+        for(int i = 0; i < count; i++) {
+            ArrayList dependents = ret[i].dependents;
+            for(int j = 0; j < dependents.size(); j++) {
+                Step dep = (Step) dependents.get(j);
+                dep.unmet--;
+                if(dep.unmet == 0) {
+                    ret[count] = dep;
+                    count++;
+                }
+            }
+        }
+        return count == ret.length ? ret : null;
+    }
+
+    private static Object[] getNets(Location loc, CircuitWires.BundleMap map) {
+        WireBundle b = map.getBundleAt(loc);
+        if(b == null) return new Object[] { loc };
+        if(b.threads == null) return new Object[0];
+        return b.threads;
+    }
+
+    private Circuit circuit;
+    private CircuitWires.BundleMap map;
+    private Step[] order;
+    private Pin[] outputPins;
+    private int inputCount;
+
+    private ParallelEvaluator(Circuit circuit, CircuitWires.BundleMap map,
+            Step[] order, List inputPins, List outputPins) {
+        this.circuit = circuit;
+        this.map = map;
+        this.order = order;
+        this.outputPins = (Pin[]) outputPins.toArray(new Pin[outputPins.size()]);
+        this.inputCount = inputPins.size();
+    }
+
+    /** Computes the rows starting at the given row, one for each lane,
+     * placing the results into the corresponding rows of the columns.
+     * This may be called from several threads at once. If a component
+     * turns out not to support parallel computation after all, it
+     * throws <code>UnsupportedOperationException</code>. */
+    void evaluate(int firstRow, Entry[][] columns) {
+        ParallelValue[] threadValues = new ParallelValue[map.threadCount];
+        HashMap pointValues = new HashMap(); // Location -> ParallelValue
+        for(int i = 0; i < order.length; i++) {
+            Step step = order[i];
+            HashMap values = new HashMap(); // Location -> ParallelValue
+            if(step.inputPin >= 0) {
+                long lanes = 0;
+                for(int k = ParallelValue.LANES - 1; k >= 0; k--) {
+                    lanes <<= 1;
+                    if(TruthTable.isInputSet(firstRow + k, step.inputPin, inputCount)) {
+                        lanes |= 1;
+                    }
+                }
+                values.put(step.outputs[0], ParallelValue.create(new long[1],
+                        new long[1], new long[] { lanes }));
+            } else {
+                for(int j = 0; j < step.inputs.length; j++) {
+                    Location loc = step.inputs[j];
+                    ParallelValue v = getValueAt(loc, threadValues, pointValues);
+                    if(v != null) values.put(loc, v);
+                }
+                step.computer.computeParallel(values);
+            }
+            for(int j = 0; j < step.outputs.length; j++) {
+                Location loc = step.outputs[j];
+                ParallelValue v = (ParallelValue) values.get(loc);
+                if(v != null) send(loc, v, threadValues, pointValues);
+            }
+        }
+
+        int rowCount = columns.length == 0 ? 0 : columns[0].length;
+        int lanes = Math.min(ParallelValue.LANES, rowCount - firstRow);
+        for(int j = 0; j < outputPins.length; j++) {
+            ParallelValue v = getValueAt(outputPins[j].getEnd(0).getLocation(),
+                    threadValues, pointValues);
+            long error = v == null ? 0 : v.getError(0);
+            long unknown = v == null ? -1L : v.getUnknown(0);
+            long value = v == null ? 0 : v.getValue(0);
+            Entry[] column = columns[j];
+            for(int k = 0; k < lanes; k++) {
+                long mask = 1L << k;
+                Entry out;
+                if((error & mask) != 0)        out = Entry.BUS_ERROR;
+                else if((unknown & mask) != 0) out = Entry.DONT_CARE;
+                else if((value & mask) != 0)   out = Entry.ONE;
+                else                           out = Entry.ZERO;
+                column[firstRow + k] = out;
+            }
+        }
+    }
+
+    // Mirrors CircuitWires.getThreadValue for wired points, and
+    // Propagator.computeValue for the others.
+    private void send(Location loc, ParallelValue v, ParallelValue[] threadValues,
+            HashMap pointValues) {
+        WireBundle b = map.getBundleAt(loc);
+        if(b == null) {
+            ParallelValue old = (ParallelValue) pointValues.get(loc);
+            pointValues.put(loc, old == null ? v : old.combine(v));
+        } else if(b.threads != null) {
+            for(int i = 0; i < b.threads.length; i++) {
+                int id = b.threads[i].id;
+                ParallelValue bit = getBit(v, i);
+                ParallelValue old = threadValues[id];
+                threadValues[id] = old == null ? bit : old.combine(bit);
+            }
+        }
+    }
+
+    // Mirrors what CircuitState.getValue would return at the location.
+    private ParallelValue getValueAt(Location loc, ParallelValue[] threadValues,
+            HashMap pointValues) {
+        WireBundle b = map.getBundleAt(loc);
+        ParallelValue ret = null;
+        if(b == null) {
+            ret = (ParallelValue) pointValues.get(loc);
+        } else if(b.threads != null) {
+            int width = b.threads.length;
+            long[] error = new long[width];
+            long[] unknown = new long[width];
+            long[] value = new long[width];
+            for(int i = 0; i < width; i++) {
+                ParallelValue tv = threadValues[b.threads[i].id];
+                if(tv == null) {
+                    unknown[i] = -1L;
+                } else {
+                    error[i] = tv.getError(0);
+                    unknown[i] = tv.getUnknown(0);
+                    value[i] = tv.getValue(0);
+                }
+            }
+            ret = ParallelValue.create(error, unknown, value);
+        }
+        if(ret == null) {
+            int width = circuit.getWidth(loc).getWidth();
+            if(width > 0) ret = ParallelValue.createUnknown(width);
+        }
+        return ret;
+    }
+
+    // Value.get returns an error for bits beyond the width, and so
+    // must we.
+    private static ParallelValue getBit(ParallelValue v, int bit) {
+        if(bit >= v.getWidth()) return ParallelValue.createError(1);
+        return ParallelValue.create(new long[] { v.getError(bit) },
+                new long[] { v.getUnknown(bit) }, new long[] { v.getValue(bit) });
+    }
+}
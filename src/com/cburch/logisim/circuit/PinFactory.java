@@ -58,6 +58,7 @@ public class PinFactory extends AbstractComponentFactory {
                 : Strings.get("pinInputToolTip");
         }
         if(key == FACING_ATTRIBUTE_KEY) return Pin.facing_attr;
+        if(key == SHARES_GRAPHICS) return Boolean.TRUE;
         return super.getFeature(key, attrs);
     }
     
@@ -0,0 +1,45 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Value;
+
+/** The schedule of values that components have emitted but which have
+ * not yet reached their locations. Events scheduled for the same time are
+ * removed in the order in which they were added.
+ *
+ * Removing an event does not return an object; instead, the queue
+ * remembers the event most recently removed, and its fields can be read
+ * through the <code>getState</code>, <code>getPoint</code>,
+ * <code>getCause</code>, and <code>getValue</code> methods until the next
+ * call to <code>remove</code>. */
+interface PropagationQueue {
+    public boolean isEmpty();
+
+    public int size();
+
+    public void clear();
+
+    public void add(int time, CircuitState state, int point,
+            Component cause, Value val);
+
+    /** Returns the time of the earliest pending event. This should be
+     * called only when the queue is not empty. */
+    public int peekTime();
+
+    /** Removes the next event scheduled for the given time, returning
+     * false if no events remain for that time. */
+    public boolean remove(int time);
+
+    public CircuitState getState();
+
+    /** Returns the id of the location of the event, as assigned by the
+     * circuit of the event's state. */
+    public int getPoint();
+
+    public Component getCause();
+
+    public Value getValue();
+}
@@ -5,84 +5,68 @@ package com.cburch.logisim.circuit;
 
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
 
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
+import com.cburch.logisim.comp.ComponentFactory;
 import com.cburch.logisim.comp.EndData;
 import com.cburch.logisim.data.AttributeEvent;
 import com.cburch.logisim.data.AttributeListener;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.file.Options;
-import com.cburch.logisim.util.PQueue;
+import com.cburch.logisim.proj.LogisimPreferences;
 
 class Propagator {
-    static class SetData implements Comparable {
-        int time;
-        int serialNumber;
-        CircuitState state; // state of circuit containing component
+    static class SetData {
         Component cause;    // component emitting the value
-        Location loc;       // the location at which value is emitted
+        int point;          // id of the location at which value is emitted
         Value val;          // value being emitted
         SetData next = null;
 
-        private SetData(int time, int serialNumber, CircuitState state,
-                Location loc, Component cause, Value val) {
-            this.time = time;
-            this.serialNumber = serialNumber;
-            this.state = state;
+        private SetData(int point, Component cause, Value val) {
             this.cause = cause;
-            this.loc = loc;
+            this.point = point;
             this.val = val;
         }
-        
-        public int compareTo(Object other) {
-            SetData o = (SetData) other;
-            // Yes, these subtractions may overflow. This is intentional, as it
-            // avoids potential wraparound problems as the counters increment.
-            int ret = o.time - this.time;
-            if(ret != 0) return ret;
-            return o.serialNumber - this.serialNumber;
-        }
-        
-        public SetData cloneFor(CircuitState newState) {
-            Propagator newProp = newState.getPropagator();
-            int dtime = newProp.clock - state.getPropagator().clock;
-            SetData ret = new SetData(time + dtime,
-                    newProp.setDataSerialNumber, newState, loc, cause, val);
-            newProp.setDataSerialNumber++;
-            if(this.next != null) ret.next = this.next.cloneFor(newState);
+
+        public SetData cloneList() {
+            SetData ret = new SetData(point, cause, val);
+            if(this.next != null) ret.next = this.next.cloneList();
             return ret;
         }
 
         public String toString() {
-            return loc + ":" + val + "(" + cause + ")";
+            return point + ":" + val + "(" + cause + ")";
         }
     }
 
-    private static class ComponentPoint {
-        Component cause;
-        Location loc;
-
-        public ComponentPoint(Component cause, Location loc) {
-            this.cause = cause;
-            this.loc = loc;
-        }
-
-        public int hashCode() {
-            return 31 * cause.hashCode() + loc.hashCode();
-        }
-
-        public boolean equals(Object other) {
-            if(!(other instanceof ComponentPoint)) return false;
-            ComponentPoint o = (ComponentPoint) other;
-            return this.cause.equals(o.cause) && this.loc.equals(o.loc);
+    /** The counts gathered for a SimulatorMetrics during a propagation,
+     * before they are added to its totals. */
+    static class MetricsCounts {
+        int events;
+        int ticks;
+        int propagations;
+        int oscillations;
+        int queueHighWater;
+        long wireNanos;
+        long componentNanos;
+        HashMap components = new HashMap(); // ComponentFactory -> int[1]
+
+        void clear() {
+            events = 0;
+            ticks = 0;
+            propagations = 0;
+            oscillations = 0;
+            queueHighWater = 0;
+            wireNanos = 0;
+            componentNanos = 0;
+            components.clear();
         }
     }
-    
+
     private static class Listener implements AttributeListener {
         WeakReference prop;
         
@@ -98,16 +82,26 @@ class Propagator {
                 e.getSource().removeAttributeListener(this);
             } else if(e.getAttribute().equals(Options.sim_rand_attr)) {
                 p.updateRandomness();
+            } else if(e.getAttribute().equals(Options.sim_limit_attr)) {
+                p.updateLimit();
+            } else if(e.getAttribute().equals(Options.sim_levelize_attr)) {
+                p.updateLevelized();
             }
         }
     }
 
     private CircuitState    root; // root of state tree
     
+    // steps a propagation may take while the oscillation detector is on
+    private static final int DETECTOR_STEP_CAP = 1000000;
+
     /** The number of clock cycles to let pass before deciding that the
-     * circuit is oscillating.
+     * circuit is oscillating, as set in the project's options. It applies
+     * only while random delays are on; otherwise an OscillationDetector
+     * recognizes a circuit that repeats itself, and only
+     * DETECTOR_STEP_CAP limits a propagation.
      */
-    private int simLimit = 1000;
+    private volatile int simLimit;
 
     /** On average, one out of every 2**simRandomShift propagations
      * through a component is delayed one step more than the component
@@ -116,15 +110,28 @@ class Propagator {
      * practice). */
     private volatile int simRandomShift;
 
-    private PQueue  toProcess = new PQueue();
+    /** Whether combinational components are propagated in order of rank
+     * with no delay, as set in the project's options. See CircuitLevels.
+     */
+    private volatile boolean levelized;
+
+    private PropagationQueue toProcess;
+    private String queueKind; // preference from which toProcess was created
     private int clock = 0;
     private boolean isOscillating = false;
     private boolean oscAdding = false;
     private PropagationPoints oscPoints = new PropagationPoints(); 
+    private OscillationDetector oscDetector = new OscillationDetector();
+    private OscillationDetector detector = null; // non-null while detecting
     private int  ticks = 0;
     private Random noiseSource = new Random();
     private int noiseCount = 0;
-    private int setDataSerialNumber = 0;
+    private int stepStamp = 0; // identifies the current call to stepInternal
+    private PropagationPoints stepPoints = null; // points changed by the current step
+    private CircuitState immediateState = null; // state and component whose
+    private Component immediateCause = null;    //   values take effect at once
+    private volatile SimulatorMetrics metrics = null;
+    private MetricsCounts counts = null; // null unless metrics are being collected
     
     static int lastId = 0;
     int id = lastId++;
@@ -134,6 +141,19 @@ class Propagator {
         Listener l = new Listener(this);
         root.getProject().getOptions().getAttributeSet().addAttributeListener(l);
         updateRandomness();
+        updateLimit();
+        updateLevelized();
+        toProcess = createQueue();
+    }
+    
+    private PropagationQueue createQueue() {
+        String queue = LogisimPreferences.getSimQueue();
+        queueKind = queue;
+        if(queue == LogisimPreferences.QUEUE_HEAP) {
+            return new HeapPropagationQueue();
+        } else {
+            return new CalendarPropagationQueue();
+        }
     }
     
     private void updateRandomness() {
@@ -145,6 +165,22 @@ class Propagator {
         simRandomShift = logVal;
     }
 
+    private void updateLimit() {
+        Options opts = root.getProject().getOptions();
+        Object limit = opts.getAttributeSet().getValue(Options.sim_limit_attr);
+        simLimit = Math.max(((Integer) limit).intValue(), 1);
+    }
+
+    private void updateLevelized() {
+        Options opts = root.getProject().getOptions();
+        Object value = opts.getAttributeSet().getValue(Options.sim_levelize_attr);
+        levelized = ((Boolean) value).booleanValue();
+    }
+
+    boolean isLevelized() {
+        return levelized;
+    }
+
     boolean isOscillating() {
         return isOscillating;
     }
@@ -163,19 +199,42 @@ class Propagator {
     CircuitState getRootState() {
         return root;
     }
+
+    void setMetrics(SimulatorMetrics value) {
+        metrics = value;
+    }
     
     void reset() {
-        toProcess.clear();
+        // the queue is recreated only if the preferred kind has changed,
+        // so that a state reset for each of many runs reuses its slots
+        if(queueKind == LogisimPreferences.getSimQueue()) {
+            toProcess.clear();
+        } else {
+            toProcess = createQueue();
+        }
         root.reset();
         isOscillating = false;
     }
     
     void propagate() {
+        startCounting();
         oscPoints.clear();
         clearDirtyPoints();
         clearDirtyComponents();
 
+        // random delays may yet break a repetition, so the detector is
+        // used only when they are disabled
+        detector = simRandomShift == 0 ? oscDetector : null;
+        if(detector != null) detector.clear(clock);
+
+        // With the detector on, a loop is reported once it repeats, so the
+        // simulation limit would only misreport deep designs that take
+        // many steps to settle; just a much larger cap is kept, for loops
+        // that never repeat exactly. Random delays keep a loop from
+        // repeating, so with them the detector is off and the limit alone
+        // decides, as it always did.
         int oscThreshold = simLimit;
+        if(detector != null) oscThreshold = Math.max(oscThreshold, DETECTOR_STEP_CAP);
         int logThreshold = 3 * oscThreshold / 4;
         int iters = 0;
         while(!toProcess.isEmpty()) {
@@ -187,17 +246,42 @@ class Propagator {
                 oscAdding = true;
                 stepInternal(oscPoints);
             } else {
-                isOscillating = true;
-                oscAdding = false;
+                setOscillating();
                 return;
             }
+
+            if(detector != null) {
+                int period = detector.stepCompleted(clock, toProcess.size());
+                if(period > 0) {
+                    // go around the loop once more to find the points in it
+                    detector = null;
+                    oscPoints.clear();
+                    oscAdding = true;
+                    for(int i = 0; i < period && !toProcess.isEmpty(); i++) {
+                        stepInternal(oscPoints);
+                    }
+                    setOscillating();
+                    return;
+                }
+            }
         }
+        detector = null;
         isOscillating = false;
         oscAdding = false;
         oscPoints.clear();
+        finishCounting(true);
+    }
+
+    private void setOscillating() {
+        detector = null;
+        isOscillating = true;
+        oscAdding = false;
+        if(counts != null) counts.oscillations++;
+        finishCounting(true);
     }
     
     void step(PropagationPoints changedPoints) {
+        startCounting();
         oscPoints.clear();
         clearDirtyPoints();
         clearDirtyComponents();
@@ -208,53 +292,105 @@ class Propagator {
         stepInternal(changedPoints);
         oscAdding = false;
         oscPoints = oldOsc;
+        finishCounting(false);
+    }
+
+    private void startCounting() {
+        SimulatorMetrics m = metrics;
+        if(m != null && m.isEnabled()) {
+            if(counts == null) counts = new MetricsCounts();
+        } else {
+            counts = null;
+        }
+    }
+
+    private void finishCounting(boolean propagated) {
+        SimulatorMetrics m = metrics;
+        if(counts != null && m != null) {
+            if(propagated) counts.propagations++;
+            m.add(counts);
+            counts.clear();
+        }
     }
     
     private void stepInternal(PropagationPoints changedPoints) {
         if(toProcess.isEmpty()) return;
+        MetricsCounts counts = this.counts;
+        if(counts != null && toProcess.size() > counts.queueHighWater) {
+            counts.queueHighWater = toProcess.size();
+        }
         
         // update clock
-        clock = ((SetData) toProcess.peek()).time;
+        clock = toProcess.peekTime();
+        stepPoints = changedPoints;
+        stepStamp++;
+        if(stepStamp == 0) stepStamp = 1; // 0 marks ends never handled
 
         // propagate all values for this clock tick
-        HashMap visited = new HashMap(); // State -> set of ComponentPoints handled
-        while(true) {
-            SetData data = (SetData) toProcess.peek();
-            if(data == null || data.time != clock) break;
-            toProcess.remove();
-            CircuitState state = data.state;
+        while(toProcess.remove(clock)) {
+            CircuitState state = toProcess.getState();
+            int point = toProcess.getPoint();
+            Component cause = toProcess.getCause();
+            Value val = toProcess.getValue();
+            if(counts != null) counts.events++;
 
             // if it's already handled for this clock tick, continue
-            HashSet handled = (HashSet) visited.get(state);
-            if(handled != null) {
-                if(!handled.add(new ComponentPoint(data.cause, data.loc))) continue;
-            } else {
-                handled = new HashSet();
-                visited.put(state, handled);
-                handled.add(new ComponentPoint(data.cause, data.loc));
-            }
-            
-            /*DEBUGGING - comment out
-            Simulator.log(data.time + ": proc " + data.loc + " in "
-                    + data.state + " to " + data.val
-                    + " by " + data.cause); // */
-            
-            if(changedPoints != null) changedPoints.add(state, data.loc);
+            // the netlist is recompiled whenever the circuit's components
+            // or their ends change, so a cause without an end at the point
+            // has been removed or moved since it sent the event; its
+            // location's id may even belong to another location by now,
+            // so the event is dropped
+            int endId = getHandledId(state, cause, point);
+            if(endId < 0) continue;
+            if(state.handledStamps[endId] == stepStamp) continue;
+            state.handledStamps[endId] = stepStamp;
 
-            // change the information about value
-            SetData oldHead = (SetData) state.causes.get(data.loc);
-            Value   oldVal  = computeValue(oldHead);
-            SetData newHead = addCause(state, oldHead, data);
-            Value   newVal  = computeValue(newHead);
 
-            // if the value at point has changed, propagate it
-            if(!newVal.equals(oldVal)) {
-                state.markPointAsDirty(data.loc);
-            }
+            /*DEBUGGING - comment out
+            Simulator.log(clock + ": proc " + point + " in "
+                    + state + " to " + val
+                    + " by " + cause); // */
+
+            applyValue(state, point, cause, val);
         }
 
         clearDirtyPoints();
         clearDirtyComponents();
+        stepPoints = null;
+    }
+
+    private void applyValue(CircuitState state, int point, Component cause,
+            Value val) {
+        if(detector != null) {
+            detector.eventHash += OscillationDetector.hash(state, point, cause, val);
+        }
+
+        if(stepPoints != null) {
+            stepPoints.add(state,
+                    state.getCircuit().wires.points.getLocation(point));
+        }
+
+        // change the information about value
+        state.prepareCauses(point);
+        SetData oldHead = state.causes[point];
+        Value   oldVal  = computeValue(oldHead);
+        SetData newHead = addCause(state, oldHead, point, cause, val);
+        Value   newVal  = computeValue(newHead);
+
+        // if the value at point has changed, propagate it
+        if(!newVal.equals(oldVal)) {
+            state.markPointAsDirty(point);
+        }
+    }
+    
+    private static int getHandledId(CircuitState state, Component cause,
+            int point) {
+        Netlist netlist = state.getCircuit().getNetlist();
+        if(state.handledNetlist != netlist) {
+            state.handledNetlist = netlist;
+            state.handledStamps = new int[netlist.getEndCount()];
+        }
+        return netlist.getEndId(cause, point);
     }
     
     boolean isPending() {
@@ -311,7 +447,20 @@ class Propagator {
     //
     void setValue(CircuitState state, Location pt, Value val,
             Component cause, int delay) {
+        int point = state.getPointId(pt);
+        if(point < 0) return; // nothing is attached to receive the value
+        setValue(state, point, val, cause, delay);
+    }
+
+    void setValue(CircuitState state, int point, Value val,
+            Component cause, int delay) {
         if(cause instanceof Wire || cause instanceof Splitter) return;
+        if(cause == immediateCause && state == immediateState) {
+            // a levelized component; its state applies the value's
+            // effects before propagating the next rank
+            applyValue(state, point, cause, val);
+            return;
+        }
         if(delay <= 0) {
             delay = 1;
         }
@@ -329,20 +478,21 @@ class Propagator {
                 }
             }
         }
-        toProcess.add(new SetData(clock + delay, setDataSerialNumber,
-                state, pt, cause, val));
+        toProcess.add(clock + delay, state, point, cause, val);
         /*DEBUGGING - comment out
-        Simulator.log(clock + ": set " + pt + " in "
+        Simulator.log(clock + ": set " + point + " in "
                 + state + " to " + val
                 + " by " + 
                 cause + " after " + delay); //*/
-
-        setDataSerialNumber++;
     }
 
     boolean tick() {
         ticks++;
-        return root.tick(ticks);
+        startCounting();
+        if(counts != null) counts.ticks++;
+        boolean ret = root.tick(ticks);
+        finishCounting(false);
+        return ret;
     }
 
     //
@@ -351,41 +501,79 @@ class Propagator {
     void checkComponentEnds(CircuitState state, Component comp) {
         for(Iterator it = comp.getEnds().iterator(); it.hasNext(); ) {
             EndData end = (EndData) it.next();
-            Location   loc      = end.getLocation();
-            SetData oldHead = (SetData) state.causes.get(loc);
+            int     point   = state.getPointId(end.getLocation());
+            if(point < 0) continue;
+            state.prepareCauses(point);
+            SetData oldHead = state.causes[point];
             Value   oldVal  = computeValue(oldHead);
-            SetData newHead = removeCause(state, oldHead, loc, comp);
+            SetData newHead = removeCause(state, oldHead, point, comp);
             Value   newVal  = computeValue(newHead);
-            Value   wireVal = state.getValueByWire(loc);
+            Value   wireVal = state.getValueByWire(point);
 
             if(!newVal.equals(oldVal) || wireVal != null) {
-                state.markPointAsDirty(loc);
+                state.markPointAsDirty(point);
             }
-            if(wireVal != null) state.setValueByWire(loc, Value.NIL);
+            if(wireVal != null) state.setValueByWire(point, Value.NIL);
         }
     }
 
     private void clearDirtyPoints() {
-        root.processDirtyPoints();
+        if(counts == null) {
+            root.processDirtyPoints();
+        } else {
+            long start = System.nanoTime();
+            root.processDirtyPoints();
+            counts.wireNanos += System.nanoTime() - start;
+        }
     }
 
     private void clearDirtyComponents() {
-        root.processDirtyComponents();
+        if(counts == null) {
+            root.processDirtyComponents();
+        } else {
+            long start = System.nanoTime();
+            root.processDirtyComponents();
+            counts.componentNanos += System.nanoTime() - start;
+        }
+    }
+
+    // called by CircuitState around propagating a levelized component,
+    // so that the values the component sets take effect immediately
+    void setImmediate(CircuitState state, Component comp) {
+        immediateState = state;
+        immediateCause = comp;
+    }
+
+    // called by CircuitState each time it propagates a component
+    void componentPropagated(Component comp) {
+        MetricsCounts counts = this.counts;
+        if(counts != null) {
+            ComponentFactory factory = comp.getFactory();
+            int[] count = (int[]) counts.components.get(factory);
+            if(count == null) {
+                count = new int[1];
+                counts.components.put(factory, count);
+            }
+            count[0]++;
+        }
     }
 
     private SetData addCause(CircuitState state, SetData head,
-            SetData data) {
-        if(data.val == null || data.val.isUnknown()) { // actually, it should be removed
-            return removeCause(state, head, data.loc, data.cause);
+            int point, Component cause, Value val) {
+        if(val == null || val.isUnknown()) { // actually, it should be removed
+            return removeCause(state, head, point, cause);
         }
 
-        HashMap causes = state.causes;
 
         // first check whether this is change of previous info.
         boolean replaced = false;
         for(SetData n = head; n != null; n = n.next) {
-            if(n.cause == data.cause) {
-                n.val = data.val;
+            if(n.cause == cause) {
+                if(detector != null) {
+                    detector.driverHash ^= OscillationDetector.hash(state, point, cause, n.val)
+                        ^ OscillationDetector.hash(state, point, cause, val);
+                }
+                n.val = val;
                 replaced = true;
                 break;
             }
@@ -393,8 +581,12 @@ class Propagator {
 
         // otherwise, insert to list of causes
         if(!replaced) {
+            if(detector != null) {
+                detector.driverHash ^= OscillationDetector.hash(state, point, cause, val);
+            }
+            SetData data = new SetData(point, cause, val);
             if(head == null) {
-                causes.put(data.loc, data);
+                state.causes[point] = data;
                 head = data;
             } else {
                 data.next = head.next;
@@ -406,19 +598,23 @@ class Propagator {
     }
 
     private SetData removeCause(CircuitState state, SetData head,
-            Location loc, Component cause) {
-        HashMap causes = state.causes;
+            int point, Component cause) {
         if(head == null) {
             ;
         } else if(head.cause == cause) {
+            if(detector != null) {
+                detector.driverHash ^= OscillationDetector.hash(state, point, cause, head.val);
+            }
             head = head.next;
-            if(head == null) causes.remove(loc);
-            else causes.put(loc, head);
+            state.causes[point] = head;
         } else {
             SetData prev = head;
             SetData cur = head.next;
             while(cur != null) {
                 if(cur.cause == cause) {
+                    if(detector != null) {
+                        detector.driverHash ^= OscillationDetector.hash(state, point, cause, cur.val);
+                    }
                     prev.next = cur.next;
                     break;
                 }
@@ -10,11 +10,6 @@ import java.util.Iterator;
 import com.cburch.logisim.comp.ComponentDrawContext;
 
 public class Simulator {
-    /** If PRINT_TICK_RATE is true, then the number of ticks per second is
-     * displayed once per TICK_RATE_QUANTUM ticks. */
-    private static final boolean PRINT_TICK_RATE = false;
-    private static final int TICK_RATE_QUANTUM = 128;
-
     /*begin DEBUGGING
     private static PrintWriter debug_log;
     
@@ -44,10 +39,6 @@ public class Simulator {
         private volatile boolean propagateRequested = false;
         private volatile boolean complete = false;
 
-        // These variables apply only if PRINT_TICK_RATE is set
-        int tickRateTicks = 0;
-        long tickRateStart = System.currentTimeMillis();
-
         public Propagator getPropagator() {
             return propagator;
         }
@@ -152,27 +143,6 @@ public class Simulator {
                 ticksRequested--;
             }
             propagator.tick();
-            if(PRINT_TICK_RATE) {
-                tickRateTicks++;
-                if(tickRateTicks >= TICK_RATE_QUANTUM) {
-                    long a = tickRateStart;
-                    long b = System.currentTimeMillis();
-                    double t = 1000 * TICK_RATE_QUANTUM / (b - a);
-                    if(t >= 100.0) {
-                        t += 0.5;
-                        System.out.println((int) t + " Hz"); //OK
-                    } else {
-                        // This is so we display only three significant digits
-                        double fact = 0.1;
-                        while(t < 1 / fact) fact *= 10.0;
-                        fact *= 100.0;
-                        t = (int) (t * fact + 0.5) / fact;
-                        System.out.println(t + " Hz"); //OK
-                    }
-                    tickRateTicks = 0;
-                    tickRateStart = b;
-                }
-            }
         }
     }
     
@@ -242,6 +212,7 @@ public class Simulator {
 
     private PropagationManager manager = new PropagationManager();
     private Ticker ticker = new Ticker();
+    private SimulatorMetrics metrics = new SimulatorMetrics();
     private ArrayList listeners = new ArrayList();
 
     public Simulator() {
@@ -257,10 +228,15 @@ public class Simulator {
     public void shutDown() {
         ticker.shutDown();
         manager.shutDown();
+        metrics.stopDump();
     }
 
     public void setCircuitState(CircuitState state) {
-        manager.setPropagator(state.getPropagator());
+        Propagator prop = state.getPropagator();
+        Propagator old = manager.getPropagator();
+        if(old != null && old != prop) old.setMetrics(null);
+        prop.setMetrics(metrics);
+        manager.setPropagator(prop);
         ticker.awake();
     }
     
@@ -342,6 +318,12 @@ public class Simulator {
         return prop != null && prop.isOscillating();
     }
 
+    /** Returns the metrics describing this simulator's work, which are
+     * collected only once they are enabled. */
+    public SimulatorMetrics getMetrics() {
+        return metrics;
+    }
+
     public void addSimulatorListener(SimulatorListener l) { listeners.add(l); }
     public void removeSimulatorListener(SimulatorListener l) { listeners.remove(l); }
     void firePropagationCompleted() {
@@ -0,0 +1,291 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cburch.logisim.comp.ComponentFactory;
+
+/** Counts the work a Simulator's propagator does: the events it
+ * processes, the ticks, the deepest the event queue gets, the time spent
+ * updating wires versus propagating components, how many times each
+ * type of component is propagated, and how many times the circuit is
+ * found to oscillate. Nothing is counted until collection is enabled.
+ *
+ * The propagator accumulates its counts privately and adds them here
+ * at the end of each propagation, so reading the metrics from another
+ * thread never slows the simulation down. The metrics can also be
+ * appended periodically to a file as CSV or JSON. */
+public class SimulatorMetrics {
+    private class Dumper extends Thread {
+        private PrintWriter out;
+        private int interval;
+        private boolean json;
+        private boolean complete = false;
+        private long lastTime;
+        private long lastEvents;
+        private long lastTicks;
+
+        Dumper(PrintWriter out, int interval, boolean json) {
+            this.out = out;
+            this.interval = interval;
+            this.json = json;
+            setDaemon(true);
+        }
+
+        synchronized void shutDown() {
+            complete = true;
+            notifyAll();
+        }
+
+        public void run() {
+            synchronized(SimulatorMetrics.this) {
+                lastTime = System.currentTimeMillis();
+                lastEvents = events;
+                lastTicks = ticks;
+            }
+            if(!json) out.println(CSV_HEADER);
+            while(true) {
+                synchronized(this) {
+                    long end = System.currentTimeMillis() + interval;
+                    long wait = interval;
+                    while(!complete && wait > 0) {
+                        try {
+                            wait(wait);
+                        } catch(InterruptedException e) { }
+                        wait = end - System.currentTimeMillis();
+                    }
+                }
+                dump();
+                if(complete) break;
+            }
+            out.close();
+        }
+
+        private void dump() {
+            String line;
+            synchronized(SimulatorMetrics.this) {
+                long now = System.currentTimeMillis();
+                double secs = Math.max(now - lastTime, 1) / 1000.0;
+                double eventRate = (events - lastEvents) / secs;
+                double tickRate = (ticks - lastTicks) / secs;
+                lastTime = now;
+                lastEvents = events;
+                lastTicks = ticks;
+                line = json ? toJson(now, eventRate, tickRate)
+                        : toCsv(now, eventRate, tickRate);
+            }
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private static final String CSV_HEADER = "time,events,eventsPerSec,ticks,"
+        + "ticksPerSec,propagations,queueHighWater,wireMillis,"
+        + "componentMillis,oscillations,components";
+
+    private volatile boolean enabled = false;
+
+    // these are guarded by this object's lock
+    private long startTime = System.currentTimeMillis();
+    private long events = 0;
+    private long ticks = 0;
+    private long propagations = 0;
+    private long oscillations = 0;
+    private int queueHighWater = 0;
+    private long wireNanos = 0;
+    private long componentNanos = 0;
+    private HashMap componentCounts = new HashMap(); // String -> long[1]
+    private Dumper dumper = null;
+
+    SimulatorMetrics() { }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /** Zeroes all counts, so that rates are measured from now on. */
+    public synchronized void clear() {
+        startTime = System.currentTimeMillis();
+        events = 0;
+        ticks = 0;
+        propagations = 0;
+        oscillations = 0;
+        queueHighWater = 0;
+        wireNanos = 0;
+        componentNanos = 0;
+        componentCounts.clear();
+    }
+
+    public synchronized long getEventCount() {
+        return events;
+    }
+
+    public synchronized long getTickCount() {
+        return ticks;
+    }
+
+    public synchronized long getPropagationCount() {
+        return propagations;
+    }
+
+    public synchronized long getOscillationCount() {
+        return oscillations;
+    }
+
+    public synchronized int getQueueHighWater() {
+        return queueHighWater;
+    }
+
+    public synchronized long getWirePhaseNanos() {
+        return wireNanos;
+    }
+
+    public synchronized long getComponentPhaseNanos() {
+        return componentNanos;
+    }
+
+    /** Returns the average number of events processed each second since
+     * the metrics were created or last cleared. */
+    public synchronized double getEventsPerSecond() {
+        return events / getElapsedSeconds();
+    }
+
+    public synchronized double getTicksPerSecond() {
+        return ticks / getElapsedSeconds();
+    }
+
+    /** Returns a map from the name of each type of component to the
+     * number of times components of that type have been propagated. */
+    public synchronized Map getComponentCounts() {
+        TreeMap ret = new TreeMap();
+        for(Iterator it = componentCounts.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            long[] count = (long[]) entry.getValue();
+            ret.put(entry.getKey(), new Long(count[0]));
+        }
+        return ret;
+    }
+
+    private double getElapsedSeconds() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return Math.max(elapsed, 1) / 1000.0;
+    }
+
+    /** Begins appending the metrics to the file every given number of
+     * milliseconds, as a line of JSON or a row of CSV. Any dump already
+     * in progress is stopped first. */
+    public void startDump(File file, int millis, boolean json) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file.getPath(), true));
+        synchronized(this) {
+            if(dumper != null) dumper.shutDown();
+            dumper = new Dumper(out, Math.max(millis, 1), json);
+            dumper.start();
+        }
+    }
+
+    /** Stops the periodic dump, after writing the metrics one last time. */
+    public synchronized void stopDump() {
+        if(dumper != null) {
+            dumper.shutDown();
+            dumper = null;
+        }
+    }
+
+    //
+    // methods for the Propagator
+    //
+    synchronized void add(Propagator.MetricsCounts counts) {
+        events += counts.events;
+        ticks += counts.ticks;
+        propagations += counts.propagations;
+        oscillations += counts.oscillations;
+        if(counts.queueHighWater > queueHighWater) {
+            queueHighWater = counts.queueHighWater;
+        }
+        wireNanos += counts.wireNanos;
+        componentNanos += counts.componentNanos;
+        for(Iterator it = counts.components.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            String name = ((ComponentFactory) entry.getKey()).getName();
+            int count = ((int[]) entry.getValue())[0];
+            long[] total = (long[]) componentCounts.get(name);
+            if(total == null) {
+                total = new long[1];
+                componentCounts.put(name, total);
+            }
+            total[0] += count;
+        }
+    }
+
+    //
+    // formatting
+    //
+    private String toCsv(long now, double eventRate, double tickRate) {
+        StringBuffer ret = new StringBuffer();
+        ret.append(now);
+        ret.append(',').append(events);
+        ret.append(',').append(Math.round(eventRate));
+        ret.append(',').append(ticks);
+        ret.append(',').append(Math.round(tickRate));
+        ret.append(',').append(propagations);
+        ret.append(',').append(queueHighWater);
+        ret.append(',').append(wireNanos / 1000000);
+        ret.append(',').append(componentNanos / 1000000);
+        ret.append(',').append(oscillations);
+        ret.append(",\"");
+        boolean first = true;
+        for(Iterator it = getComponentCounts().entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if(!first) ret.append(';');
+            first = false;
+            ret.append(((String) entry.getKey()).replace('"', '\''));
+            ret.append('=').append(entry.getValue());
+        }
+        ret.append('"');
+        return ret.toString();
+    }
+
+    private String toJson(long now, double eventRate, double tickRate) {
+        StringBuffer ret = new StringBuffer();
+        ret.append("{\"time\":").append(now);
+        ret.append(",\"events\":").append(events);
+        ret.append(",\"eventsPerSec\":").append(Math.round(eventRate));
+        ret.append(",\"ticks\":").append(ticks);
+        ret.append(",\"ticksPerSec\":").append(Math.round(tickRate));
+        ret.append(",\"propagations\":").append(propagations);
+        ret.append(",\"queueHighWater\":").append(queueHighWater);
+        ret.append(",\"wireMillis\":").append(wireNanos / 1000000);
+        ret.append(",\"componentMillis\":").append(componentNanos / 1000000);
+        ret.append(",\"oscillations\":").append(oscillations);
+        ret.append(",\"components\":{");
+        boolean first = true;
+        for(Iterator it = getComponentCounts().entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if(!first) ret.append(',');
+            first = false;
+            ret.append('"');
+            String name = (String) entry.getKey();
+            for(int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if(c == '"' || c == '\\') ret.append('\\');
+                if(c >= ' ') ret.append(c);
+            }
+            ret.append("\":").append(entry.getValue());
+        }
+        ret.append("}}");
+        return ret.toString();
+    }
+}
@@ -0,0 +1,21 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+public interface SlotPropagator {
+    /**
+     * Propagates the component as <code>Component.propagate</code>
+     * would, but reads and sends the values at its ends through the
+     * given slots, which the simulator has already resolved to the
+     * state's values, so that the component need neither look up its
+     * ends' locations nor create any objects.
+     *
+     * A component offers this through <code>getFeature</code>, with
+     * <code>SlotPropagator.class</code> as the key; components that do
+     * not are propagated through <code>Component.propagate</code>.
+     * The slots are reused for other components afterwards, and so
+     * they must not be kept.
+     */
+    public void propagate(CircuitState state, EndSlots slots);
+}
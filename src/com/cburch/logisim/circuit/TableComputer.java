@@ -0,0 +1,206 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.List;
+
+import com.cburch.logisim.analyze.model.Entry;
+import com.cburch.logisim.analyze.model.TruthTable;
+import com.cburch.logisim.data.ParallelValue;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.proj.Project;
+
+/** Computes the rows of a truth table using a thread for each processor.
+ * The threads repeatedly claim the next batch of rows until none remain.
+ * When the circuit allows it, each batch is computed at once by a
+ * ParallelEvaluator; otherwise, each thread simulates the batch's rows
+ * one after another in its own CircuitState, which it resets for each
+ * row rather than creating a new one. */
+class TableComputer {
+    private static final int BATCH_SIZE = ParallelValue.LANES;
+
+    private class Worker extends Thread {
+        private CircuitState state;
+
+        Worker(CircuitState state) {
+            this.state = state;
+        }
+
+        public void run() {
+            work(state);
+        }
+    }
+
+    private Project proj;
+    private Circuit circuit;
+    private List inputPins;
+    private List outputPins;
+    private Entry[][] columns;
+    private int rowCount;
+    private TableProgress progress;
+    private ParallelEvaluator parallel;
+
+    // these are guarded by this object's lock
+    private int nextRow;
+    private int rowsDone;
+    private boolean stopped;
+    private boolean canceled;
+    private boolean parallelFailed;
+    private RuntimeException failure;
+
+    TableComputer(Project proj, Circuit circuit, List inputPins,
+            List outputPins, Entry[][] columns, TableProgress progress) {
+        this.proj = proj;
+        this.circuit = circuit;
+        this.inputPins = inputPins;
+        this.outputPins = outputPins;
+        this.columns = columns;
+        this.rowCount = 1 << inputPins.size();
+        this.progress = progress;
+    }
+
+    /** Fills in the columns, returning false if the computation was
+     * canceled before all rows were computed. */
+    boolean compute() {
+        // ParallelEvaluator.create also brings the circuit's wire
+        // bundles up to date before any of the threads look at them.
+        parallel = ParallelEvaluator.create(circuit, inputPins, outputPins);
+        if(parallel != null) {
+            runWorkers();
+            if(parallelFailed && !canceled) {
+                parallel = null;
+                runWorkers();
+            }
+        } else {
+            runWorkers();
+        }
+        if(failure != null) throw failure;
+        return !canceled;
+    }
+
+    private void runWorkers() {
+        nextRow = 0;
+        rowsDone = 0;
+        stopped = false;
+        parallelFailed = false;
+
+        int batches = (rowCount + BATCH_SIZE - 1) / BATCH_SIZE;
+        int count = Math.min(Runtime.getRuntime().availableProcessors(), batches);
+        if(count < 1) count = 1;
+
+        // All the CircuitStates are created before any worker starts (see
+        // createState), and the calling thread acts as a worker.
+        Worker[] workers = new Worker[count - 1];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(createState());
+        }
+        CircuitState state = createState();
+        for(int i = 0; i < workers.length; i++) {
+            workers[i].start();
+        }
+        work(state);
+        for(int i = 0; i < workers.length; i++) {
+            boolean joined = false;
+            while(!joined) {
+                try {
+                    workers[i].join();
+                    joined = true;
+                } catch(InterruptedException e) { }
+            }
+        }
+    }
+
+    // Creates a state for a worker and propagates it once, on the calling
+    // thread. Creating a state registers it with its circuit, and the
+    // first propagation creates the substates, registering them in turn,
+    // and computes each circuit's netlist, bundles and levels, none of
+    // which may happen on several threads at once. Resetting keeps the
+    // substates, so the workers then only read what is shared.
+    private CircuitState createState() {
+        if(parallel != null) return null;
+        CircuitState ret = new CircuitState(proj, circuit);
+        Propagator prop = ret.getPropagator();
+        prop.reset();
+        prop.propagate();
+        return ret;
+    }
+
+    private void work(CircuitState state) {
+        try {
+            while(true) {
+                int first = claimRows();
+                if(first < 0) return;
+                int last = Math.min(first + BATCH_SIZE, rowCount);
+                if(parallel != null) {
+                    parallel.evaluate(first, columns);
+                } else {
+                    for(int i = first; i < last; i++) computeRow(state, i);
+                }
+                finishRows(last - first);
+            }
+        } catch(UnsupportedOperationException e) {
+            if(parallel == null) fail(e);
+            else fail(null);
+        } catch(RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void computeRow(CircuitState state, int row) {
+        Propagator prop = state.getPropagator();
+        prop.reset();
+        int inputCount = inputPins.size();
+        for(int j = 0; j < inputCount; j++) {
+            Pin pin = (Pin) inputPins.get(j);
+            boolean value = TruthTable.isInputSet(row, j, inputCount);
+            pin.setValue(state, value ? Value.TRUE : Value.FALSE);
+        }
+
+        prop.propagate();
+
+        if(prop.isOscillating()) {
+            for(int j = 0; j < columns.length; j++) {
+                columns[j][row] = Entry.OSCILLATE_ERROR;
+            }
+        } else {
+            for(int j = 0; j < columns.length; j++) {
+                Pin pin = (Pin) outputPins.get(j);
+                Entry out;
+                Value outValue = pin.getValue(state).get(0);
+                if(outValue == Value.TRUE) out = Entry.ONE;
+                else if(outValue == Value.FALSE) out = Entry.ZERO;
+                else if(outValue == Value.ERROR) out = Entry.BUS_ERROR;
+                else out = Entry.DONT_CARE;
+                columns[j][row] = out;
+            }
+        }
+    }
+
+    private synchronized int claimRows() {
+        if(!stopped && progress != null && progress.isCanceled()) {
+            stopped = true;
+            canceled = true;
+        }
+        if(stopped || nextRow >= rowCount) return -1;
+        int ret = nextRow;
+        nextRow += BATCH_SIZE;
+        return ret;
+    }
+
+    private void finishRows(int count) {
+        int done;
+        synchronized(this) {
+            rowsDone += count;
+            done = rowsDone;
+        }
+        if(progress != null) progress.rowsCompleted(done, rowCount);
+    }
+
+    // A null exception means that the ParallelEvaluator gave up.
+    private synchronized void fail(RuntimeException e) {
+        stopped = true;
+        if(e == null) parallelFailed = true;
+        else if(failure == null) failure = e;
+    }
+}
@@ -0,0 +1,14 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+/** Receives reports as Analyze computes the rows of a truth table. Both
+ * methods may be called from any of the threads computing rows. */
+public interface TableProgress {
+    /** Called each time a batch of rows is completed. */
+    public void rowsCompleted(int rowsDone, int rowCount);
+
+    /** Returns true if the computation should stop as soon as possible. */
+    public boolean isCanceled();
+}
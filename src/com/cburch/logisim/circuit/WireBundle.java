@@ -13,6 +13,8 @@ class WireBundle {
     private Location widthDeterminant = null;
     WireThread[] threads = null;
     SmallSet points = new SmallSet(); // points bundle hits
+    int id = -1; // index assigned by the BundleMap
+    int[] pointIds = null; // location ids of points, assigned with id
     private WidthIncompatibilityData incompatibilityData = null;
 
     WireBundle() {
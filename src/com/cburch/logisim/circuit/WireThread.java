@@ -8,6 +8,7 @@ import com.cburch.logisim.util.SmallSet;
 class WireThread {
     private WireThread parent;
     private SmallSet bundles = new SmallSet();
+    int id = -1; // index assigned by the BundleMap
 
     WireThread() {
         parent = this;
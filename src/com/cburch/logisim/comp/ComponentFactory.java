@@ -19,6 +19,7 @@ public interface ComponentFactory {
     public static final Object SHOULD_SNAP = new Object();
     public static final Object TOOL_TIP = new Object();
     public static final Object FACING_ATTRIBUTE_KEY = new Object();
+    public static final Object SHARES_GRAPHICS = new Object();
     
     public String getName();
     public String getDisplayName();
@@ -40,8 +41,12 @@ public interface ComponentFactory {
      * implementation of that interface if it supports the feature.
      * 
      * As of this writing, possible values for <code>key</code> include:
-     * <code>TOOL_TIP</code> (return a <code>String</code>) and
-     * <code>SHOULD_SNAP</code> (return a <code>Boolean</code>).
+     * <code>TOOL_TIP</code> (return a <code>String</code>),
+     * <code>SHOULD_SNAP</code> (return a <code>Boolean</code>) and
+     * <code>SHARES_GRAPHICS</code> (return <code>Boolean.TRUE</code> if
+     * drawing a component changes nothing about the <code>Graphics</code>
+     * except its color, font and stroke, so that it can be drawn without
+     * a copy of its own).
      * 
      * @param key  an object representing a feature.
      * @return an object representing information about how the component
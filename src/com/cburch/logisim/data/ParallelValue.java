@@ -0,0 +1,172 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.data;
+
+/** Represents the values of a signal in 64 independent simulations, or
+ * lanes, at once. Like Value, each bit of the signal is described by an
+ * error mask, an unknown mask, and a value mask, except that here each
+ * mask is a long holding one bit for each lane. The operations apply
+ * Value's operations to every lane simultaneously, so that lane
+ * <i>k</i> of <code>a.and(b)</code> is always lane <i>k</i> of
+ * <code>a</code> anded with lane <i>k</i> of <code>b</code>. */
+public class ParallelValue {
+    public static final int LANES = 64;
+
+    public static ParallelValue createUnknown(int width) {
+        long[] unknown = new long[width];
+        for(int i = 0; i < width; i++) unknown[i] = -1L;
+        return new ParallelValue(new long[width], unknown, new long[width]);
+    }
+
+    public static ParallelValue createError(int width) {
+        long[] error = new long[width];
+        for(int i = 0; i < width; i++) error[i] = -1L;
+        return new ParallelValue(error, new long[width], new long[width]);
+    }
+
+    /** Returns a value holding the given value in every lane. */
+    public static ParallelValue create(Value val) {
+        int width = val.getWidth();
+        long[] error = new long[width];
+        long[] unknown = new long[width];
+        long[] value = new long[width];
+        for(int i = 0; i < width; i++) {
+            Value bit = val.get(i);
+            if(bit == Value.ERROR)        error[i] = -1L;
+            else if(bit == Value.UNKNOWN) unknown[i] = -1L;
+            else if(bit == Value.TRUE)    value[i] = -1L;
+        }
+        return new ParallelValue(error, unknown, value);
+    }
+
+    /** Returns a value whose bit <i>i</i> is described by the masks at
+     * index <i>i</i> of the three arrays, which the value takes over.
+     * As with Value, error takes precedence over unknown, and both take
+     * precedence over the value mask. */
+    public static ParallelValue create(long[] error, long[] unknown, long[] value) {
+        for(int i = 0; i < error.length; i++) {
+            unknown[i] &= ~error[i];
+            value[i] &= ~unknown[i] & ~error[i];
+        }
+        return new ParallelValue(error, unknown, value);
+    }
+
+    /** Returns a value that matches <code>a</code> in the lanes given by
+     * the mask and <code>b</code> in the others. */
+    public static ParallelValue select(long lanes, ParallelValue a, ParallelValue b) {
+        int width = Math.max(a.getWidth(), b.getWidth());
+        long[] error = new long[width];
+        long[] unknown = new long[width];
+        long[] value = new long[width];
+        for(int i = 0; i < width; i++) {
+            error[i] = (a.getError(i) & lanes) | (b.getError(i) & ~lanes);
+            unknown[i] = (a.getUnknown(i) & lanes) | (b.getUnknown(i) & ~lanes);
+            value[i] = (a.getValue(i) & lanes) | (b.getValue(i) & ~lanes);
+        }
+        return new ParallelValue(error, unknown, value);
+    }
+
+    private final long[] error;
+    private final long[] unknown;
+    private final long[] value;
+
+    private ParallelValue(long[] error, long[] unknown, long[] value) {
+        this.error = error;
+        this.unknown = unknown;
+        this.value = value;
+    }
+
+    public int getWidth() {
+        return error.length;
+    }
+
+    // As with Value's masks, bits beyond the width are all zero.
+    public long getError(int bit) {
+        return bit < error.length ? error[bit] : 0L;
+    }
+
+    public long getUnknown(int bit) {
+        return bit < unknown.length ? unknown[bit] : 0L;
+    }
+
+    public long getValue(int bit) {
+        return bit < value.length ? value[bit] : 0L;
+    }
+
+    /** Returns a mask of the lanes in which every bit is unknown, which
+     * are the lanes where Value.isUnknown would return true. */
+    public long getUnknownLanes() {
+        long ret = -1L;
+        for(int i = 0; i < unknown.length; i++) ret &= unknown[i];
+        return ret;
+    }
+
+    /** Returns the value held in the given lane. */
+    public Value get(int lane) {
+        Value[] bits = new Value[error.length];
+        long mask = 1L << lane;
+        for(int i = 0; i < bits.length; i++) {
+            if((error[i] & mask) != 0)        bits[i] = Value.ERROR;
+            else if((unknown[i] & mask) != 0) bits[i] = Value.UNKNOWN;
+            else if((value[i] & mask) != 0)   bits[i] = Value.TRUE;
+            else                              bits[i] = Value.FALSE;
+        }
+        return Value.create(bits);
+    }
+
+    public ParallelValue combine(ParallelValue other) {
+        if(other == null) return this;
+        int width = Math.max(this.getWidth(), other.getWidth());
+        long[] e = new long[width];
+        long[] u = new long[width];
+        long[] v = new long[width];
+        for(int i = 0; i < width; i++) {
+            long u0 = this.getUnknown(i);
+            long u1 = other.getUnknown(i);
+            long v0 = this.getValue(i);
+            long v1 = other.getValue(i);
+            e[i] = this.getError(i) | other.getError(i) | ((v0 ^ v1) & ~(u0 | u1));
+            u[i] = u0 & u1;
+            v[i] = (v0 & ~u0) | (v1 & ~u1);
+        }
+        return create(e, u, v);
+    }
+
+    public ParallelValue and(ParallelValue other) {
+        if(other == null) return this;
+        int width = Math.max(this.getWidth(), other.getWidth());
+        long[] e = new long[width];
+        long[] u = new long[width];
+        long[] v = new long[width];
+        for(int i = 0; i < width; i++) {
+            long u0 = this.getUnknown(i);
+            long u1 = other.getUnknown(i);
+            e[i] = this.getError(i) | other.getError(i);
+            u[i] = u0 & u1;
+            v[i] = (this.getValue(i) | u0) & (other.getValue(i) | u1);
+        }
+        return create(e, u, v);
+    }
+
+    public ParallelValue or(ParallelValue other) {
+        if(other == null) return this;
+        int width = Math.max(this.getWidth(), other.getWidth());
+        long[] e = new long[width];
+        long[] u = new long[width];
+        long[] v = new long[width];
+        for(int i = 0; i < width; i++) {
+            e[i] = this.getError(i) | other.getError(i);
+            u[i] = this.getUnknown(i) & other.getUnknown(i);
+            v[i] = this.getValue(i) | other.getValue(i);
+        }
+        return create(e, u, v);
+    }
+
+    public ParallelValue not() {
+        int width = getWidth();
+        long[] v = new long[width];
+        for(int i = 0; i < width; i++) v[i] = ~value[i];
+        return create((long[]) error.clone(), (long[]) unknown.clone(), v);
+    }
+}
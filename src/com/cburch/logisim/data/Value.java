@@ -5,8 +5,6 @@ package com.cburch.logisim.data;
 
 import java.awt.Color;
 
-import com.cburch.logisim.util.Cache;
-
 public class Value {
     public static final Value FALSE   = new Value(1, 0, 0, 0);
     public static final Value TRUE    = new Value(1, 0, 0, 1);
@@ -23,8 +21,39 @@ public class Value {
     public static final Color ERROR_COLOR = Color.RED;
     public static final Color WIDTH_ERROR_COLOR = new Color(255, 123, 0);
     public static final Color MULTI_COLOR = Color.BLACK;
-    
-    private static final Cache cache = new Cache();
+
+    // Multi-bit values are interned so that the simulator does not
+    // create a new object for each value it computes. Fully known values
+    // up to MAX_SMALL_WIDTH bits, and values entirely unknown or
+    // entirely in error, are created in advance; others go into a table
+    // of 2^TABLE_BITS sets of TABLE_WAYS entries each. The table is
+    // shared by all threads without locking: since a Value's fields are
+    // final, a thread that sees another's entry sees it whole, and
+    // losing a race merely leaves two equal Values, which equals()
+    // already tolerates.
+    private static final int MAX_SMALL_WIDTH = 8;
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_WAYS = 4;
+
+    private static final Value[][] smallKnown = new Value[MAX_SMALL_WIDTH + 1][];
+    private static final Value[] allUnknown = new Value[MAX_WIDTH + 1];
+    private static final Value[] allError = new Value[MAX_WIDTH + 1];
+    private static final Value[] table = new Value[TABLE_WAYS << TABLE_BITS];
+    private static int nextVictim = 0; // races are harmless
+
+    static {
+        for(int w = 2; w <= MAX_WIDTH; w++) {
+            int mask = (w == 32 ? -1 : ~(-1 << w));
+            allUnknown[w] = new Value(w, 0, mask, 0);
+            allError[w] = new Value(w, mask, 0, 0);
+            if(w <= MAX_SMALL_WIDTH) {
+                smallKnown[w] = new Value[1 << w];
+                for(int v = 0; v < smallKnown[w].length; v++) {
+                    smallKnown[w][v] = new Value(w, 0, 0, v);
+                }
+            }
+        }
+    }
 
     public static Value create(Value[] values) {
         if(values.length == 0) return NIL;
@@ -76,17 +105,54 @@ public class Value {
             unknown = unknown & mask & ~error;
             value = value & mask & ~unknown & ~error;
 
-            int hashCode = 31 * (31 * (31 * width + error) + unknown) + value;
-            Object cached = cache.get(hashCode);
-            if(cached != null) {
-                Value val = (Value) cached;
-                if(val.value == value && val.width == width && val.error == error
-                        && val.unknown == unknown) return val;
+            if(error == 0) {
+                if(unknown == 0) {
+                    if(width <= MAX_SMALL_WIDTH) return smallKnown[width][value];
+                } else if(unknown == mask) {
+                    return allUnknown[width];
+                }
+            } else if(error == mask) {
+                return allError[width];
+            }
+            return intern(width, error, unknown, value);
+        }
+    }
+
+    private static Value intern(int width, int error, int unknown, int value) {
+        int hash = 31 * (31 * (31 * width + error) + unknown) + value;
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        int set = (hash & ((1 << TABLE_BITS) - 1)) * TABLE_WAYS;
+        Value[] tab = table;
+        for(int i = set; i < set + TABLE_WAYS; i++) {
+            Value val = tab[i];
+            if(val == null) {
+                val = new Value(width, error, unknown, value);
+                tab[i] = val;
+                return val;
             }
-            Value ret= new Value(width, error, unknown, value);
-            cache.put(hashCode, ret);
-            return ret;
+            if(val.value == value && val.width == width && val.error == error
+                    && val.unknown == unknown) return val;
         }
+        Value ret = new Value(width, error, unknown, value);
+        int victim = nextVictim;
+        nextVictim = (victim + 1) & (TABLE_WAYS - 1);
+        tab[set + victim] = ret;
+        return ret;
+    }
+
+    /**
+     * Returns the value of the given width whose packed form, as
+     * returned by <code>toPacked</code>, is the given long.
+     */
+    public static Value fromPacked(int width, long packed) {
+        if(width == 0) return NIL;
+        if(width > MAX_WIDTH) throw new RuntimeException(
+            "Cannot have more than " + MAX_WIDTH + " bits in a value");
+        int lo = (int) packed;
+        int hi = (int) (packed >>> 32);
+        return Value.create(width, hi & lo, hi & ~lo, lo & ~hi);
     }
 
     private final int width;
@@ -192,6 +258,20 @@ public class Value {
         return ret;
     }
 
+    /**
+     * Returns this value packed into a long, so that components can
+     * compute on values without creating objects. The low 32 bits hold
+     * the bits that are 1 or in error, and the high 32 bits hold the
+     * bits that are unknown or in error; thus a value is fully defined
+     * exactly when its packed form's high half is zero, and then its low
+     * half is what <code>toIntValue</code> returns. The width is not
+     * included, and must be given again to <code>fromPacked</code>.
+     */
+    public long toPacked() {
+        return ((long) (unknown | error) << 32)
+            | ((long) (value | error) & 0xFFFFFFFFL);
+    }
+
     public int toIntValue() {
         if(error != 0) return -1;
         if(unknown != 0) return -1;
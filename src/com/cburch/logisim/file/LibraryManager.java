@@ -91,7 +91,7 @@ class LibraryManager {
         }
     }
     
-    public LoadedLibrary loadLogisimLibrary(Loader loader, File toRead) {
+    public synchronized LoadedLibrary loadLogisimLibrary(Loader loader, File toRead) {
         LoadedLibrary ret = findKnown(toRead);
         if(ret != null) return ret;
         
@@ -107,7 +107,7 @@ class LibraryManager {
         return ret;
     }
     
-    public LoadedLibrary loadJarLibrary(Loader loader, File toRead, String className) {
+    public synchronized LoadedLibrary loadJarLibrary(Loader loader, File toRead, String className) {
         JarDescriptor jarDescriptor = new JarDescriptor(toRead, className);
         LoadedLibrary ret = findKnown(jarDescriptor);
         if(ret != null) return ret;
@@ -4,6 +4,7 @@
 package com.cburch.logisim.file;
 
 import java.awt.Component;
+import java.awt.GraphicsEnvironment;
 import java.io.FileWriter;
 import java.io.Reader;
 import java.io.File;
@@ -275,8 +276,10 @@ public class Loader implements LibraryLoader {
             File top = (File) filesOpening.peek();
             description = toProjectName(top) + ": " + description;
         }
-        JOptionPane.showMessageDialog(parent, description,
-                Strings.get("fileErrorTitle"), JOptionPane.ERROR_MESSAGE);
+        if(!GraphicsEnvironment.isHeadless()) {
+            JOptionPane.showMessageDialog(parent, description,
+                    Strings.get("fileErrorTitle"), JOptionPane.ERROR_MESSAGE);
+        }
         throw new LoaderException(description);
     }
 
@@ -286,9 +289,13 @@ public class Loader implements LibraryLoader {
             String message = source.getMessage();
             if(message == null) break;
 
-            JOptionPane.showMessageDialog(parent,
-                message, Strings.get("fileMessageTitle"),
-                JOptionPane.INFORMATION_MESSAGE);
+            if(GraphicsEnvironment.isHeadless()) {
+                System.err.println(message); //OK
+            } else {
+                JOptionPane.showMessageDialog(parent,
+                    message, Strings.get("fileMessageTitle"),
+                    JOptionPane.INFORMATION_MESSAGE);
+            }
         }
     }
 
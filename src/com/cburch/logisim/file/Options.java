@@ -32,6 +32,8 @@ public class Options {
         = Attributes.forInteger("simlimit", Strings.getter("simLimitOption"));
     public static final Attribute sim_rand_attr
         = Attributes.forInteger("simrand", Strings.getter("simRandomOption"));
+    public static final Attribute sim_levelize_attr
+        = Attributes.forBoolean("simlevelize", Strings.getter("simLevelizeOption"));
     public static final Attribute ATTR_RADIX_1 = RadixOption.ATTRIBUTE;
     public static final Attribute ATTR_RADIX_2
         = Attributes.forOption("radix2", Strings.getter("radix2Option"), RadixOption.OPTIONS);
@@ -50,12 +52,12 @@ public class Options {
     private static final Attribute[] ATTRIBUTES = {
         showgrid_attr, preview_attr, showghosts_attr, showhalo_attr,
             showtips_attr, zoom_attr, sim_limit_attr, sim_rand_attr,
-            ATTR_RADIX_1, ATTR_RADIX_2, ATTR_TOOLBAR_LOC,
+            sim_levelize_attr, ATTR_RADIX_1, ATTR_RADIX_2, ATTR_TOOLBAR_LOC,
     };
     private static final Object[] DEFAULTS = {
         Boolean.TRUE, Boolean.FALSE, Boolean.TRUE, Boolean.TRUE,
             Boolean.TRUE, new Double(1.0), IntegerFactory.create(1000),
-            IntegerFactory.ZERO,
+            IntegerFactory.ZERO, Boolean.FALSE,
             RadixOption.RADIX_2, RadixOption.RADIX_10_SIGNED, Direction.NORTH,
     };
     
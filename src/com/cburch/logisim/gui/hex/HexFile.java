@@ -1,108 +1,280 @@
 /* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
  * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
- 
+
 package com.cburch.logisim.gui.hex;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
-import java.util.StringTokenizer;
 
 import com.cburch.hex.HexModel;
 
 public class HexFile {
     private HexFile() { }
-    
+
     private static final String RAW_IMAGE_HEADER = "v2.0 raw";
-    
-    private static class HexReader {
-        private BufferedReader in;
-        private int[] data;
-        private StringTokenizer curLine;
-        private long leftCount;
-        private long leftValue;
-        
-        public HexReader(BufferedReader in) throws IOException {
-            this.in = in;
-            data = new int[4096];
-            curLine = findNonemptyLine();
-        }
-        
-        private StringTokenizer findNonemptyLine() throws IOException {
-            String line = in.readLine();
-            while(line != null) {
-                StringTokenizer ret = new StringTokenizer(line);
-                if(ret.hasMoreTokens()) return ret;
-                line = this.in.readLine();
+
+    // values handed over at a time; MemContents' pages are this large,
+    // so that each chunk fills exactly one page
+    private static final int CHUNK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // what each byte is to the parser: a digit's value, or one of these
+    private static final int SPACE = -1;
+    private static final int STAR = -2;
+    private static final int INVALID = -3;
+    private static final int[] CHAR_CODES = new int[256];
+    private static final byte[] END_TOKEN = { (byte) ' ' };
+
+    static {
+        Arrays.fill(CHAR_CODES, INVALID);
+        for(int i = 0; i < 10; i++) CHAR_CODES['0' + i] = i;
+        for(int i = 0; i < 6; i++) {
+            CHAR_CODES['a' + i] = 10 + i;
+            CHAR_CODES['A' + i] = 10 + i;
+        }
+        CHAR_CODES[' '] = SPACE;
+        CHAR_CODES['\t'] = SPACE;
+        CHAR_CODES['\n'] = SPACE;
+        CHAR_CODES['\r'] = SPACE;
+        CHAR_CODES['\f'] = SPACE;
+        CHAR_CODES['*'] = STAR;
+    }
+
+    // Receives the values an image describes, in order.
+    private static interface Sink {
+        // Sets len values, the first of which is the offs'th of the image.
+        public void set(long offs, int[] values, int len) throws IOException;
+
+        public void fill(long offs, long len, int value) throws IOException;
+    }
+
+    private static class ModelSink implements Sink {
+        private HexModel dst;
+        private long first;
+        private long count; // values the model holds
+
+        ModelSink(HexModel dst) {
+            this.dst = dst;
+            this.first = dst.getFirstOffset();
+            this.count = dst.getLastOffset() - first + 1;
+        }
+
+        public void set(long offs, int[] values, int len) throws IOException {
+            if(offs + len > count) {
+                throw new IOException(Strings.get("hexFileSizeError"));
             }
-            return null;
-        }
-        
-        private String nextToken() throws IOException {
-            if(curLine != null && curLine.hasMoreTokens()) return curLine.nextToken();
-            curLine = findNonemptyLine();
-            return curLine == null ? null : curLine.nextToken();
-        }
-        
-        public boolean hasNext() {
-            return leftCount > 0 || curLine != null && curLine.hasMoreTokens();
-        }
-        
-        public int[] next() throws IOException {
-            int pos = 0;
-            if(leftCount > 0) {
-                int n = (int) Math.min(data.length - pos, leftCount);
-                if(n == 1) {
-                    data[pos] = (int) leftValue;
-                    pos++;
-                    leftCount--;
-                } else {
-                    Arrays.fill(data, pos, pos + n, (int) leftValue);
-                    pos += n;
-                    leftCount -= n;
-                }
+            if(len != values.length) {
+                int[] vals = new int[len];
+                System.arraycopy(values, 0, vals, 0, len);
+                values = vals;
             }
-            if(pos >= data.length) return data;
-                
-            for(String tok = nextToken(); tok != null; tok = nextToken()) {
-                try {
-                    int star = tok.indexOf("*");
-                    if(star < 0) {
-                        leftCount = 1;
-                        leftValue = Long.parseLong(tok, 16);
-                    } else {
-                        leftCount = Long.parseLong(tok.substring(0, star));
-                        leftValue = Long.parseLong(tok.substring(star + 1), 16);
+            dst.set(first + offs, values);
+        }
+
+        public void fill(long offs, long len, int value) throws IOException {
+            if(offs + len > count) {
+                throw new IOException(Strings.get("hexFileSizeError"));
+            }
+            dst.fill(first + offs, len, value);
+        }
+    }
+
+    private static class ArraySink implements Sink {
+        private int[] data = new int[CHUNK_SIZE];
+        private int size = 0;
+
+        public void set(long offs, int[] values, int len) throws IOException {
+            ensureCapacity(offs + len);
+            System.arraycopy(values, 0, data, size, len);
+            size += len;
+        }
+
+        public void fill(long offs, long len, int value) throws IOException {
+            ensureCapacity(offs + len);
+            Arrays.fill(data, size, size + (int) len, value);
+            size += (int) len;
+        }
+
+        private void ensureCapacity(long n) throws IOException {
+            if(n > Integer.MAX_VALUE) {
+                throw new IOException(Strings.get("hexFileSizeError"));
+            }
+            if(n > data.length) {
+                int[] oldData = data;
+                data = new int[(int) Math.max(n, 3L * data.length / 2)];
+                System.arraycopy(oldData, 0, data, 0, size);
+            }
+        }
+
+        int[] getData() {
+            if(size == data.length) return data;
+            int[] ret = new int[size];
+            System.arraycopy(data, 0, ret, 0, size);
+            return ret;
+        }
+    }
+
+    // Parses an image's tokens, each of which is a value in hexadecimal
+    // or a count in decimal, an asterisk and a value to repeat that many
+    // times, a byte at a time, without making strings of them. The values
+    // are collected into chunks, and runs that cover whole chunks are
+    // passed on as fills.
+    private static class HexParser {
+        private Sink sink;
+        private int[] chunk = new int[CHUNK_SIZE];
+        private int chunkLength = 0;
+        private long chunkStart = 0; // offset of the chunk's first value
+        // the token so far, which may continue in the next block
+        private int digits = 0; // since the start or the asterisk
+        private long value = 0; // the digits, in hexadecimal
+        private long count = 0; // the digits, in decimal
+        private boolean decimal = true; // whether count is meaningful
+        private boolean tooLong = false; // whether value no longer fits a long
+        private long repeat = -1; // the count before the asterisk, if any
+
+        HexParser(Sink sink) {
+            this.sink = sink;
+        }
+
+        void parse(byte[] buf, int start, int end) throws IOException {
+            // the token is kept in local variables while parsing
+            int digits = this.digits;
+            long value = this.value;
+            long count = this.count;
+            boolean decimal = this.decimal;
+            boolean tooLong = this.tooLong;
+            for(int i = start; i < end; i++) {
+                int code = CHAR_CODES[buf[i] & 0xFF];
+                if(code >= 0) {
+                    if((value >>> 59) != 0) tooLong = true;
+                    value = (value << 4) | code;
+                    count = 10 * count + code;
+                    if(code >= 10) decimal = false;
+                    digits++;
+                } else if(code == SPACE) {
+                    if(digits > 0 || repeat >= 0) {
+                        // as Long.parseLong once did, reject values
+                        // beyond a long rather than truncating them
+                        if(digits == 0 || tooLong) throw formatError();
+                        add(repeat >= 0 ? repeat : 1, (int) value);
+                        digits = 0;
+                        value = 0;
+                        count = 0;
+                        decimal = true;
+                        tooLong = false;
+                        repeat = -1;
                     }
-                } catch(NumberFormatException e) {
-                    throw new IOException(Strings.get("hexNumberFormatError"));
-                }
-                
-                int n = (int) Math.min(data.length - pos, leftCount);
-                if(n == 1) {
-                    data[pos] = (int) leftValue;
-                    pos++;
-                    leftCount--;
+                } else if(code == STAR && digits > 0 && digits <= 18
+                        && decimal && repeat < 0) {
+                    repeat = count;
+                    digits = 0;
+                    value = 0;
+                    tooLong = false;
                 } else {
-                    Arrays.fill(data, pos, pos + n, (int) leftValue);
-                    pos += n;
-                    leftCount -= n;
+                    throw formatError();
                 }
-                if(pos >= data.length) return data;
             }
-            
-            if(pos >= data.length) {
-                return data;
-            } else {
-                int[] ret = new int[pos];
-                System.arraycopy(data, 0, ret, 0, pos);
-                return ret;
+            this.digits = digits;
+            this.value = value;
+            this.count = count;
+            this.decimal = decimal;
+            this.tooLong = tooLong;
+        }
+
+        // Passes on all the values parsed.
+        void finish() throws IOException {
+            parse(END_TOKEN, 0, END_TOKEN.length);
+            flush();
+        }
+
+        private void add(long n, int val) throws IOException {
+            if(n == 1) {
+                chunk[chunkLength] = val;
+                chunkLength++;
+                if(chunkLength == CHUNK_SIZE) flush();
+                return;
             }
+            while(n > 0) {
+                if(chunkLength == 0 && n >= CHUNK_SIZE) {
+                    long len = n - n % CHUNK_SIZE;
+                    sink.fill(chunkStart, len, val);
+                    chunkStart += len;
+                    n -= len;
+                    continue;
+                }
+                int len = (int) Math.min(n, CHUNK_SIZE - chunkLength);
+                Arrays.fill(chunk, chunkLength, chunkLength + len, val);
+                chunkLength += len;
+                n -= len;
+                if(chunkLength == CHUNK_SIZE) flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if(chunkLength == 0) return;
+            sink.set(chunkStart, chunk, chunkLength);
+            chunkStart += chunkLength;
+            chunkLength = 0;
+        }
+
+        long getLength() {
+            return chunkStart + chunkLength;
+        }
+
+        private static IOException formatError() {
+            return new IOException(Strings.get("hexNumberFormatError"));
+        }
+    }
+
+    // Formats values as tokens into a buffer that is written a large
+    // block at a time.
+    private static class HexWriter {
+        private Writer out;
+        private char[] buf = new char[BUFFER_SIZE];
+        private int len = 0;
+        private int tokens = 0;
+
+        HexWriter(Writer out) {
+            this.out = out;
+        }
+
+        void write(long count, int val) throws IOException {
+            if(len > buf.length - 40) flush();
+            if(tokens > 0) buf[len++] = tokens % 8 == 0 ? '\n' : ' ';
+            if(count != 1) {
+                String n = Long.toString(count);
+                n.getChars(0, n.length(), buf, len);
+                len += n.length();
+                buf[len++] = '*';
+            }
+            int shift = 28;
+            while(shift > 0 && (val >>> shift) == 0) shift -= 4;
+            for(; shift >= 0; shift -= 4) buf[len++] = HEX_DIGITS[(val >>> shift) & 0xF];
+            tokens++;
+        }
+
+        void finish() throws IOException {
+            if(tokens > 0) buf[len++] = '\n';
+            flush();
+        }
+
+        private void flush() throws IOException {
+            try {
+                out.write(buf, 0, len);
+            } catch(IOException e) {
+                throw new IOException(Strings.get("hexFileWriteError"));
+            }
+            len = 0;
         }
     }
 
@@ -110,94 +282,113 @@ public class HexFile {
         long first = src.getFirstOffset();
         long last = src.getLastOffset();
         while(last > first && src.get(last) == 0) last--;
-        int tokens = 0;
-        long cur = 0;
+        HexWriter writer = new HexWriter(out);
+        long cur = first;
         while(cur <= last) {
             int val = src.get(cur);
             long start = cur;
             cur++;
             while(cur <= last && src.get(cur) == val) cur++;
-            long len = cur - start;
-            if(len < 4) { cur = start + 1; len = 1; }
-            try {
-                if(tokens > 0) out.write(tokens % 8 == 0 ? '\n' : ' ');
-                if(cur != start + 1) out.write((cur - start) + "*");
-                out.write(Integer.toHexString(val));
-            } catch(IOException e) {
-                throw new IOException(Strings.get("hexFileWriteError"));
-            }
-            tokens++;
+            if(cur - start < 4) cur = start + 1;
+            writer.write(cur - start, val);
         }
-        if(tokens > 0) out.write('\n');
+        writer.finish();
     }
-    
+
     public static void open(HexModel dst, Reader in) throws IOException {
-        HexReader reader = new HexReader(new BufferedReader(in));
-        long offs = dst.getFirstOffset();
-        while(reader.hasNext()) {
-            int[] values = reader.next();
-            if(offs + values.length - 1 > dst.getLastOffset()) {
-                throw new IOException(Strings.get("hexFileSizeError"));
-            }
-            dst.set(offs, values);
-            offs += values.length;
-        }
-        dst.fill(offs, dst.getLastOffset() - offs + 1, 0);
+        ModelSink sink = new ModelSink(dst);
+        long len = parse(in, sink);
+        dst.fill(dst.getFirstOffset() + len, sink.count - len, 0);
     }
-    
+
     public static int[] parse(Reader in) throws IOException {
-        HexReader reader = new HexReader(new BufferedReader(in));
-        int cur = 0;
-        int[] data = new int[4096];
-        while(reader.hasNext()) {
-            int[] values = reader.next();
-            if(cur + values.length > data.length) {
-                int[] oldData = data;
-                data = new int[Math.max(cur + values.length, 3 * data.length / 2)];
-                System.arraycopy(oldData, 0, data, 0, cur);
+        ArraySink sink = new ArraySink();
+        parse(in, sink);
+        return sink.getData();
+    }
+
+    private static long parse(Reader in, Sink sink) throws IOException {
+        HexParser parser = new HexParser(sink);
+        char[] chars = new char[BUFFER_SIZE];
+        byte[] bytes = new byte[BUFFER_SIZE];
+        for(int n = in.read(chars); n >= 0; n = in.read(chars)) {
+            for(int i = 0; i < n; i++) {
+                char c = chars[i];
+                bytes[i] = c < 0x80 ? (byte) c : (byte) '?'; // '?' is invalid
             }
-            System.arraycopy(values, 0, data, cur, values.length);
-            cur += values.length;
-        }
-        if(cur != data.length) {
-            int[] oldData = data;
-            data = new int[cur];
-            System.arraycopy(oldData, 0, data, 0, cur);
+            parser.parse(bytes, 0, n);
         }
-        return data;
+        parser.finish();
+        return parser.getLength();
     }
 
+    /** Loads an image file into the model. The file is read in large
+     * blocks straight into the parser, and the values are set a page at a
+     * time. */
     public static void open(HexModel dst, File src) throws IOException {
-        BufferedReader in;
+        FileInputStream in;
         try {
-            in = new BufferedReader(new FileReader(src));
+            in = new FileInputStream(src);
         } catch(IOException e) {
             throw new IOException(Strings.get("hexFileOpenError"));
         }
         try {
-            String header = in.readLine();
-            if(!header.equals(RAW_IMAGE_HEADER)) {
-                throw new IOException(Strings.get("hexHeaderFormatError"));
+            FileChannel channel = in.getChannel();
+            ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            ModelSink sink = new ModelSink(dst);
+            HexParser parser = new HexParser(sink);
+            int header = 0; // characters of the header matched so far
+            boolean inHeader = true;
+            while(true) {
+                int n;
+                try {
+                    n = channel.read(bytes);
+                } catch(IOException e) {
+                    throw new IOException(Strings.get("hexFileReadError"));
+                }
+                if(n < 0) break;
+                bytes.flip();
+                int pos = bytes.position();
+                int end = bytes.limit();
+                byte[] array = bytes.array();
+                if(inHeader) {
+                    // the first line must be the header exactly
+                    for(; pos < end && inHeader; pos++) {
+                        char c = (char) (array[pos] & 0xFF);
+                        if(c == '\n' || c == '\r') {
+                            if(header != RAW_IMAGE_HEADER.length()) break;
+                            inHeader = false;
+                        } else if(header < RAW_IMAGE_HEADER.length()
+                                && RAW_IMAGE_HEADER.charAt(header) == c) {
+                            header++;
+                        } else {
+                            break;
+                        }
+                    }
+                    if(inHeader && pos < end) {
+                        throw new IOException(Strings.get("hexHeaderFormatError"));
+                    }
+                }
+                parser.parse(array, pos, end);
+                bytes.clear();
             }
-            open(dst, in);
-            try {
-                BufferedReader oldIn = in;
-                in = null;
-                oldIn.close();
-            } catch(IOException e) {
-                throw new IOException(Strings.get("hexFileReadError"));
+            if(inHeader && header != RAW_IMAGE_HEADER.length()) {
+                throw new IOException(Strings.get("hexHeaderFormatError"));
             }
+            parser.finish();
+            long len = parser.getLength();
+            dst.fill(dst.getFirstOffset() + len, sink.count - len, 0);
         } finally {
             try {
-                if(in != null) in.close();
+                in.close();
             } catch(IOException e) { }
         }
     }
 
     public static void save(File dst, HexModel src) throws IOException {
-        FileWriter out;
+        Writer out;
         try {
-            out = new FileWriter(dst);
+            out = new OutputStreamWriter(new FileOutputStream(dst), "US-ASCII");
         } catch(IOException e) {
             throw new IOException(Strings.get("hexFileOpenError"));
         }
@@ -38,6 +38,8 @@ class FilePanel extends LogPanel {
             enableButton.setEnabled(file != null);
             
             headerCheckBox.setSelected(model.getFileHeader());
+            headerCheckBox.setEnabled(!model.isFileBinary());
+            binaryCheckBox.setSelected(model.isFileBinary());
         }
         
         private void computeEnableItems(Model model) {
@@ -90,6 +92,35 @@ class FilePanel extends LogPanel {
                 getModel().setFile(file);
             } else if(src == headerCheckBox) {
                 getModel().setFileHeader(headerCheckBox.isSelected());
+            } else if(src == binaryCheckBox) {
+                getModel().setFileBinary(binaryCheckBox.isSelected());
+            } else if(src == exportButton) {
+                exportTrace();
+            }
+        }
+
+        private void exportTrace() {
+            File trace = getModel().getFile();
+            if(trace != null) chooser.setSelectedFile(trace);
+            int result = chooser.showOpenDialog(getLogFrame());
+            if(result != JFileChooser.APPROVE_OPTION) return;
+            trace = chooser.getSelectedFile();
+
+            String name = trace.getName();
+            int dot = name.lastIndexOf('.');
+            if(dot > 0) name = name.substring(0, dot);
+            chooser.setSelectedFile(new File(trace.getParentFile(), name + ".vcd"));
+            result = chooser.showSaveDialog(getLogFrame());
+            if(result != JFileChooser.APPROVE_OPTION) return;
+            File vcd = chooser.getSelectedFile();
+
+            try {
+                TraceFile.exportVcd(trace, vcd);
+            } catch(IOException e) {
+                JOptionPane.showMessageDialog(getLogFrame(),
+                    StringUtil.format(Strings.get("fileExportErrorMessage"), e.getMessage()),
+                    Strings.get("fileExportErrorTitle"),
+                    JOptionPane.ERROR_MESSAGE);
             }
         }
     }
@@ -101,6 +132,8 @@ class FilePanel extends LogPanel {
     private JTextField fileField = new JTextField();
     private JButton selectButton = new JButton();
     private JCheckBox headerCheckBox = new JCheckBox();
+    private JCheckBox binaryCheckBox = new JCheckBox();
+    private JButton exportButton = new JButton();
     private JFileChooser chooser = new JFileChooser();
     
     public FilePanel(LogFrame frame) {
@@ -137,11 +170,15 @@ class FilePanel extends LogPanel {
           gc.fill = GridBagConstraints.NONE;
         glue = new JPanel(); gc.weighty = 1.0; gb.setConstraints(glue, gc); add(glue); gc.weighty = 0.0;
         gb.setConstraints(headerCheckBox, gc); add(headerCheckBox);
+        gb.setConstraints(binaryCheckBox, gc); add(binaryCheckBox);
+        gb.setConstraints(exportButton, gc);   add(exportButton);
         glue = new JPanel(); gc.weighty = 1.0; gb.setConstraints(glue, gc); add(glue); gc.weighty = 0.0;
         
         enableButton.addActionListener(listener);
         selectButton.addActionListener(listener);
         headerCheckBox.addActionListener(listener);
+        binaryCheckBox.addActionListener(listener);
+        exportButton.addActionListener(listener);
         modelChanged(null, getModel());
         localeChanged();
     }
@@ -159,6 +196,8 @@ class FilePanel extends LogPanel {
         fileLabel.setText(Strings.get("fileLabel") + " ");
         selectButton.setText(Strings.get("fileSelectButton"));
         headerCheckBox.setText(Strings.get("fileHeaderCheck"));
+        binaryCheckBox.setText(Strings.get("fileBinaryCheck"));
+        exportButton.setText(Strings.get("fileExportButton"));
     }
 
     public void modelChanged(Model oldModel, Model newModel) {
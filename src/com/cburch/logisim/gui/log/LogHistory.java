@@ -0,0 +1,111 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import com.cburch.logisim.data.Value;
+
+/** Holds the entries of a model's value logs that are too old to keep in
+ * memory, in a temporary file that is mapped into memory a segment at a
+ * time, so that the operating system decides how much of it stays
+ * resident.
+ *
+ * The file is divided into blocks, each holding a fixed number of
+ * consecutive entries of one log. A log remembers the blocks it has
+ * written, oldest first, so it can find any of its entries directly.
+ * Blocks released by discarded logs are reused. The file is created
+ * only when the first block is written. */
+class LogHistory {
+    static final int BLOCK_ENTRIES = 1024;
+
+    private static final int ENTRY_SIZE = 9; // width byte, then packed value
+    private static final int BLOCK_SIZE = BLOCK_ENTRIES * ENTRY_SIZE;
+    private static final int SEGMENT_BLOCKS = 512;
+    private static final int SEGMENT_SIZE = SEGMENT_BLOCKS * BLOCK_SIZE;
+    private static final int NULL_WIDTH = 0xFF; // marks a missing value
+
+    private File file = null;
+    private RandomAccessFile stream = null;
+    private ArrayList segments = new ArrayList(); // of MappedByteBuffers
+    private int blockCount = 0; // blocks allocated in the file
+    private int[] free = new int[16]; // blocks released for reuse
+    private int freeCount = 0;
+    private boolean failed = false;
+
+    /** Writes a block of entries, returning the block's number, or -1 if
+     * the history cannot be written. */
+    public synchronized int write(Value[] entries) {
+        int block;
+        if(freeCount > 0) {
+            freeCount--;
+            block = free[freeCount];
+        } else {
+            if(blockCount % SEGMENT_BLOCKS == 0 && !addSegment()) return -1;
+            block = blockCount;
+            blockCount++;
+        }
+        MappedByteBuffer segment = getSegment(block);
+        int pos = (block % SEGMENT_BLOCKS) * BLOCK_SIZE;
+        for(int i = 0; i < BLOCK_ENTRIES; i++) {
+            Value v = i < entries.length ? entries[i] : null;
+            if(v == null) {
+                segment.put(pos, (byte) NULL_WIDTH);
+                segment.putLong(pos + 1, 0);
+            } else {
+                segment.put(pos, (byte) v.getWidth());
+                segment.putLong(pos + 1, v.toPacked());
+            }
+            pos += ENTRY_SIZE;
+        }
+        return block;
+    }
+
+    /** Returns the entry at the given index within a block. */
+    public synchronized Value read(int block, int index) {
+        MappedByteBuffer segment = getSegment(block);
+        int pos = (block % SEGMENT_BLOCKS) * BLOCK_SIZE + index * ENTRY_SIZE;
+        int width = segment.get(pos) & 0xFF;
+        if(width == NULL_WIDTH) return null;
+        return Value.fromPacked(width, segment.getLong(pos + 1));
+    }
+
+    /** Makes a block available for reuse by any log. */
+    public synchronized void release(int block) {
+        if(freeCount == free.length) {
+            int[] newFree = new int[2 * free.length];
+            System.arraycopy(free, 0, newFree, 0, freeCount);
+            free = newFree;
+        }
+        free[freeCount] = block;
+        freeCount++;
+    }
+
+    private MappedByteBuffer getSegment(int block) {
+        return (MappedByteBuffer) segments.get(block / SEGMENT_BLOCKS);
+    }
+
+    private boolean addSegment() {
+        if(failed) return false;
+        try {
+            if(stream == null) {
+                file = File.createTempFile("logisim", ".log");
+                file.deleteOnExit();
+                stream = new RandomAccessFile(file, "rw");
+            }
+            long start = (long) segments.size() * SEGMENT_SIZE;
+            segments.add(stream.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    start, SEGMENT_SIZE));
+            return true;
+        } catch(IOException e) {
+            failed = true;
+            return false;
+        }
+    }
+}
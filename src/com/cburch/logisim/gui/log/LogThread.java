@@ -20,6 +20,7 @@ class LogThread extends Thread implements ModelListener {
     private boolean canceled = false;
     private Object lock = new Object();
     private PrintWriter writer = null;
+    private TraceWriter trace = null; // used instead of writer for binary files
     private boolean headerDirty = true;
     private long lastWrite = 0;
     
@@ -31,6 +32,8 @@ class LogThread extends Thread implements ModelListener {
     public void run() {
         while(!canceled) {
             synchronized(lock) {
+                // a trace flushes itself, and is kept open so that its
+                // times continue
                 if(writer != null) {
                     if(System.currentTimeMillis() - lastWrite > IDLE_UNTIL_CLOSE) {
                         writer.close();
@@ -45,20 +48,14 @@ class LogThread extends Thread implements ModelListener {
             } catch(InterruptedException e) { }
         }
         synchronized(lock) {
-            if(writer != null) {
-                writer.close();
-                writer = null;
-            }
+            closeFile();
         }
     }
     
     public void cancel() {
         synchronized(lock) {
             canceled = true;
-            if(writer != null) {
-                writer.close();
-                writer = null;
-            }
+            closeFile();
         }
     }
 
@@ -75,7 +72,10 @@ class LogThread extends Thread implements ModelListener {
     public void filePropertyChanged(ModelEvent event) {
         synchronized(lock) {
             if(isFileEnabled()) {
-                if(writer == null) {
+                if(model.isFileBinary() ? writer != null : trace != null) {
+                    closeFile(); // the format changed
+                }
+                if(writer == null && trace == null) {
                     Selection sel = model.getSelection();
                     Value[] values = new Value[sel.size()];
                     boolean found = false;
@@ -86,13 +86,22 @@ class LogThread extends Thread implements ModelListener {
                     if(found) addEntry(values);
                 }
             } else {
-                if(writer != null) {
-                    writer.close();
-                    writer = null;
-                }
+                closeFile();
             }
         }
     }
+
+    // Should hold lock before entering this method.
+    private void closeFile() {
+        if(writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if(trace != null) {
+            trace.close();
+            trace = null;
+        }
+    }
     
     private boolean isFileEnabled() {
         return !canceled && model.isSelected() && model.isFileEnabled()
@@ -102,6 +111,10 @@ class LogThread extends Thread implements ModelListener {
     // Should hold lock and have verified that isFileEnabled() before
     // entering this method.
     private void addEntry(Value[] values) {
+        if(model.isFileBinary()) {
+            addTraceEntry(values);
+            return;
+        }
         if(writer == null) {
             try {
                 writer = new PrintWriter(new FileWriter(model.getFile(), true));
@@ -133,4 +146,33 @@ class LogThread extends Thread implements ModelListener {
         writer.println(buf.toString());
         lastWrite = System.currentTimeMillis();
     }
+
+    // Should hold lock and have verified that isFileEnabled() before
+    // entering this method.
+    private void addTraceEntry(Value[] values) {
+        if(trace == null) {
+            try {
+                trace = new TraceWriter(model.getFile());
+            } catch(IOException e) {
+                model.setFile(null);
+                return;
+            }
+            trace.start();
+            headerDirty = true;
+        } else if(trace.hasFailed()) {
+            closeFile();
+            model.setFile(null);
+            return;
+        }
+        if(headerDirty) {
+            Selection sel = model.getSelection();
+            String[] names = new String[sel.size()];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = sel.get(i).toString();
+            }
+            trace.setSignals(names);
+            headerDirty = false;
+        }
+        trace.addSample(model.getTime(), values);
+    }
 }
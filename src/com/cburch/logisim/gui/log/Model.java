@@ -14,19 +14,64 @@ import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.EventSourceWeakSupport;
 
 class Model {
+    // milliseconds the drainer waits when it finds no samples
+    private static final int DRAIN_FREQUENCY = 20;
+
+    // Logs the samples that the simulator adds to the queue, in batches,
+    // so that neither the file nor the GUI slows the simulation down.
+    private class Drainer extends Thread {
+        private volatile boolean canceled = false;
+
+        Drainer() {
+            setDaemon(true);
+        }
+
+        // Stops the thread and logs whatever samples remain.
+        void cancel() {
+            canceled = true;
+            try {
+                join();
+            } catch(InterruptedException e) { }
+            drain();
+        }
+
+        public void run() {
+            while(!canceled) {
+                if(drain() == 0) {
+                    try {
+                        Thread.sleep(DRAIN_FREQUENCY);
+                    } catch(InterruptedException e) { }
+                }
+            }
+        }
+    }
+
     private EventSourceWeakSupport listeners;
     private Selection selection;
     private HashMap log; // SelectionItem -> ValueLog
+    private LogHistory history = new LogHistory(); // older entries of the logs
     private boolean fileEnabled = false;
     private File file = null;
     private boolean fileHeader = true;
+    private boolean fileBinary = false;
     private boolean selected = false;
     private LogThread logger = null;
+    private volatile Drainer drainer = null;
+    private SampleQueue queue = new SampleQueue();
+    private volatile SelectionItem[] items; // the selection, for sampling
+    private volatile long entryTime = 0; // when the last entry was sampled
+
+    // used only by the simulator's thread
+    private long time = 0; // propagations completed
+    private SelectionItem[] sampledItems = null;
+    private int[] sampledWidths = new int[0];
+    private long[] sampledValues = new long[0];
     
     public Model(CircuitState circuitState) {
         listeners = new EventSourceWeakSupport();
         selection = new Selection(circuitState, this);
         log = new HashMap();
+        items = new SelectionItem[0];
     }
     
     public boolean isSelected() {
@@ -45,12 +90,14 @@ class Model {
     }
     
     public ValueLog getValueLog(SelectionItem item) {
-        ValueLog ret = (ValueLog) log.get(item);
-        if(ret == null && selection.indexOf(item) >= 0) {
-            ret = new ValueLog();
-            log.put(item, ret);
+        synchronized(log) {
+            ValueLog ret = (ValueLog) log.get(item);
+            if(ret == null && selection.indexOf(item) >= 0) {
+                ret = new ValueLog(history);
+                log.put(item, ret);
+            }
+            return ret;
         }
-        return ret;
     }
     
     public boolean isFileEnabled() {
@@ -65,6 +112,19 @@ class Model {
         return fileHeader;
     }
     
+    /** Returns whether the file is written as a binary trace (see
+     * TraceFile) rather than as text. */
+    public boolean isFileBinary() {
+        return fileBinary;
+    }
+
+    /** Returns the number of propagations that had been completed while
+     * the model was selected when the most recently logged entry was
+     * sampled. Entries in a binary trace are timed by this. */
+    public long getTime() {
+        return entryTime;
+    }
+    
     public void setFileEnabled(boolean value) {
         if(fileEnabled == value) return;
         fileEnabled = value;
@@ -84,33 +144,88 @@ class Model {
         fireFilePropertyChanged(new ModelEvent());
     }
     
+    public void setFileBinary(boolean value) {
+        if(fileBinary == value) return;
+        fileBinary = value;
+        fireFilePropertyChanged(new ModelEvent());
+    }
+    
+    /** Samples the selected values, as the simulator's thread completes
+     * a propagation. If any has changed, the sample is queued to be
+     * logged by another thread. */
     public void propagationCompleted() {
-        CircuitState circuitState = getCircuitState();
-        Value[] vals = new Value[selection.size()];
+        time++;
+        SelectionItem[] cur = items;
+        int n = cur.length;
+        if(n == 0) return;
+        if(cur != sampledItems) {
+            // the selection changed, so compare against what was logged
+            sampledItems = cur;
+            sampledWidths = new int[n];
+            sampledValues = new long[n];
+            for(int i = 0; i < n; i++) {
+                ValueLog valueLog = getValueLog(cur[i]);
+                Value v = valueLog == null ? null : valueLog.getLast();
+                sampledWidths[i] = v == null ? -1 : v.getWidth();
+                sampledValues[i] = v == null ? 0 : v.toPacked();
+            }
+        }
         boolean changed = false;
-        for(int i = selection.size() - 1; i >= 0; i--) {
-            SelectionItem item = selection.get(i);
-            vals[i] = item.fetchValue(circuitState);
-            if(!changed) {
-                Value v = getValueLog(item).getLast();
-                changed = v == null ? vals[i] != null : !v.equals(vals[i]);
+        CircuitState circuitState = getCircuitState();
+        for(int i = 0; i < n; i++) {
+            Value v = cur[i].fetchValue(circuitState);
+            int width = v == null ? -1 : v.getWidth();
+            long packed = v == null ? 0 : v.toPacked();
+            if(width != sampledWidths[i] || packed != sampledValues[i]) {
+                sampledWidths[i] = width;
+                sampledValues[i] = packed;
+                changed = true;
             }
         }
         if(changed) {
-            for(int i = selection.size() - 1; i >= 0; i--) {
-                SelectionItem item = selection.get(i);
-                getValueLog(item).append(vals[i]);
+            // wait if the logging falls behind, but not for a logger
+            // that is gone
+            while(!queue.add(time, cur, sampledWidths, sampledValues)) {
+                if(drainer == null) return;
+                try {
+                    Thread.sleep(1);
+                } catch(InterruptedException e) { }
             }
+        }
+    }
+
+    // Logs the samples waiting in the queue, returning how many there
+    // were. Samples taken before the selection last changed are dropped.
+    private int drain() {
+        int count = queue.size();
+        for(int k = 0; k < count; k++) {
+            SelectionItem[] sampled = queue.getItems(k);
+            if(sampled != items) continue;
+            Value[] vals = new Value[sampled.length];
+            for(int i = 0; i < vals.length; i++) {
+                vals[i] = queue.getValue(k, i);
+                ValueLog valueLog = getValueLog(sampled[i]);
+                if(valueLog != null) valueLog.append(vals[i]);
+            }
+            entryTime = queue.getTime(k);
             fireEntryAdded(new ModelEvent(), vals);
         }
+        queue.remove(count);
+        return count;
     }
     
     public void setSelected(JFrame frame, boolean value) {
         if(selected == value) return;
+        if(drainer != null) {
+            drainer.cancel(); // while selected, so the samples are logged
+            drainer = null;
+        }
         selected = value;
         if(selected) {
             logger = new LogThread(this);
             logger.start();
+            drainer = new Drainer();
+            drainer.start();
         } else {
             if(logger != null) logger.cancel();
             logger = null;
@@ -120,10 +235,17 @@ class Model {
     }
 
     void fireSelectionChanged(ModelEvent e) {
-        for(Iterator it = log.keySet().iterator(); it.hasNext(); ) {
-            SelectionItem i = (SelectionItem) it.next();
-            if(selection.indexOf(i) < 0) {
-                it.remove();
+        SelectionItem[] newItems = new SelectionItem[selection.size()];
+        for(int i = 0; i < newItems.length; i++) newItems[i] = selection.get(i);
+        items = newItems;
+
+        synchronized(log) {
+            for(Iterator it = log.keySet().iterator(); it.hasNext(); ) {
+                SelectionItem i = (SelectionItem) it.next();
+                if(selection.indexOf(i) < 0) {
+                    ((ValueLog) log.get(i)).dispose();
+                    it.remove();
+                }
             }
         }
 
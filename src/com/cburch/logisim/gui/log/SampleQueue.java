@@ -0,0 +1,84 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.log;
+
+import com.cburch.logisim.data.Value;
+
+/** Carries samples of the selected values from the simulator's thread to
+ * the one thread that logs them, without either thread taking a lock.
+ * The queue is a ring of slots allocated once and reused, so adding a
+ * sample only copies the values' packed bits into a slot.
+ *
+ * Only one thread may add samples, and only one may consume them. Each
+ * index only ever increases and is written by just one of the threads,
+ * and a slot is read only after the index covering it has been
+ * published, so nothing else needs guarding. */
+class SampleQueue {
+    private static final int SIZE = 4096; // must be a power of two
+
+    private long[] times = new long[SIZE];
+    private SelectionItem[][] items = new SelectionItem[SIZE][];
+    private int[][] widths = new int[SIZE][]; // -1 for a missing value
+    private long[][] values = new long[SIZE][]; // packed, as by Value.toPacked
+    private volatile long head = 0; // next sample to consume
+    private volatile long tail = 0; // next slot to fill
+
+    //
+    // methods for the producing thread
+    //
+    /** Adds a sample of the given items' values, returning false if the
+     * queue is full. */
+    public boolean add(long time, SelectionItem[] sampled,
+            int[] sampleWidths, long[] sampleValues) {
+        long t = tail;
+        if(t - head >= SIZE) return false;
+        int slot = (int) t & (SIZE - 1);
+        int n = sampled.length;
+        if(widths[slot] == null || widths[slot].length < n) {
+            widths[slot] = new int[Math.max(n, 8)];
+            values[slot] = new long[Math.max(n, 8)];
+        }
+        System.arraycopy(sampleWidths, 0, widths[slot], 0, n);
+        System.arraycopy(sampleValues, 0, values[slot], 0, n);
+        times[slot] = time;
+        items[slot] = sampled;
+        tail = t + 1;
+        return true;
+    }
+
+    //
+    // methods for the consuming thread
+    //
+    /** Returns the number of samples waiting to be consumed. */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /** Returns the time of the given waiting sample, counting from the
+     * oldest. */
+    public long getTime(int index) {
+        return times[getSlot(index)];
+    }
+
+    /** Returns the items that the given waiting sample is of. */
+    public SelectionItem[] getItems(int index) {
+        return items[getSlot(index)];
+    }
+
+    public Value getValue(int index, int item) {
+        int slot = getSlot(index);
+        int width = widths[slot][item];
+        return width < 0 ? null : Value.fromPacked(width, values[slot][item]);
+    }
+
+    /** Frees the slots of the oldest waiting samples. */
+    public void remove(int count) {
+        for(int i = 0; i < count; i++) items[getSlot(i)] = null;
+        head += count;
+    }
+
+    private int getSlot(int index) {
+        return (int) (head + index) & (SIZE - 1);
+    }
+}
@@ -27,6 +27,7 @@ class TablePanel extends LogPanel {
     private class MyListener implements ModelListener {
         public void selectionChanged(ModelEvent event) {
             computeRowCount();
+            computePreferredSize();
         }
 
         public void entryAdded(ModelEvent event, Value[] values) {
@@ -55,7 +56,7 @@ class TablePanel extends LogPanel {
             }
             if(rowCount != rows) {
                 rowCount = rows;
-                computePreferredSize();
+                computeTableHeight();
             }
         }
     }
@@ -111,6 +112,7 @@ class TablePanel extends LogPanel {
     private MyListener myListener = new MyListener();
     private int cellWidth = 25; // reasonable start values
     private int cellHeight = 15;
+    private boolean cellsMeasured = false; // false if no Graphics was available
     private int rowCount = 0;
     private int tableWidth;
     private int tableHeight;
@@ -130,6 +132,11 @@ class TablePanel extends LogPanel {
         return Strings.get("tableHelp");
     }
     
+    public void addNotify() {
+        super.addNotify();
+        computePreferredSize(); // the cells can be measured now
+    }
+    
     public void localeChanged() {
         computePreferredSize();
         repaint();
@@ -137,7 +144,11 @@ class TablePanel extends LogPanel {
     
     public void modelChanged(Model oldModel, Model newModel) {
         if(oldModel != null) oldModel.removeModelListener(myListener);
-        if(newModel != null) newModel.addModelListener(myListener);
+        if(newModel != null) {
+            newModel.addModelListener(myListener);
+            myListener.computeRowCount();
+            computePreferredSize();
+        }
     }
     
     public int getColumn(MouseEvent event) {
@@ -221,11 +232,14 @@ class TablePanel extends LogPanel {
         Selection sel = model.getSelection();
         int columns = sel.size();
         if(columns == 0) {
+            tableWidth = 0;
+            tableHeight = 0;
             setPreferredSize(new Dimension(0, 0));
             return;
         }
         
         Graphics g = getGraphics();
+        cellsMeasured = g != null;
         if(g == null) {
             cellHeight = 16;
             cellWidth = 24;
@@ -240,7 +254,24 @@ class TablePanel extends LogPanel {
         }
         
         tableWidth = (cellWidth + COLUMN_SEP) * columns - COLUMN_SEP;
-        tableHeight = cellHeight * (1 + rowCount) + HEADER_SEP;
+        setTableHeight();
+    }
+    
+    // Only the height depends on the number of rows, so the cells need
+    // not be measured again each time an entry is added, unless they
+    // could not be measured before. Only the rows in view are ever
+    // painted, however many there are.
+    private void computeTableHeight() {
+        if(!cellsMeasured) {
+            computePreferredSize();
+        } else {
+            setTableHeight();
+        }
+    }
+    
+    private void setTableHeight() {
+        long height = (long) cellHeight * (1 + rowCount) + HEADER_SEP;
+        tableHeight = (int) Math.min(height, Integer.MAX_VALUE);
         setPreferredSize(new Dimension(tableWidth, tableHeight));
         revalidate();
         repaint();
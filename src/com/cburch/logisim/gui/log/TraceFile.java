@@ -0,0 +1,289 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.log;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+
+/** The compact binary trace that the log can write in place of text,
+ * and its conversion to a Value Change Dump (VCD), which waveform
+ * viewers read.
+ *
+ * A trace consists of segments, one for each time logging to the file
+ * began, so that a trace can be appended to as a text log can. Each
+ * segment starts with the bytes "LGTR" and a version byte, and each
+ * record within it starts with a byte giving its type. Numbers are
+ * written seven bits to a byte, least significant first, with the high
+ * bit set on all but the last byte.
+ *
+ * A SIGNAL record gives a signal's id, its width and the length and
+ * UTF-8 bytes of its name. It comes before the first sample of the
+ * signal, and again whenever the signal's width or name changes.
+ *
+ * A SAMPLE record gives the number of propagations since the previous
+ * sample in the segment (or since logging began, for the first), and
+ * the number of signals whose values changed, followed by their values.
+ * Each value starts with the signal's id shifted left one bit, the low
+ * bit set if any bits are unknown or in error. The low half of the
+ * value's packed form (see Value.toPacked) follows, in as few bytes as
+ * the width needs, least significant first, and then the high half
+ * likewise if the low bit was set. */
+class TraceFile {
+    static final byte[] MAGIC = { 'L', 'G', 'T', 'R' };
+    static final int VERSION = 1;
+    static final int SIGNAL = 1;
+    static final int SAMPLE = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static class Signal {
+        String name;
+        int width = 0; // the greatest width defined, for the VCD
+        String code = null; // the VCD identifier
+    }
+
+    // Reads a trace through a buffer refilled from the channel.
+    private static class Input {
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private boolean atEnd = false;
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        // Returns false if the trace has ended.
+        boolean fill(int bytes) throws IOException {
+            while(buffer.remaining() < bytes && !atEnd) {
+                buffer.compact();
+                atEnd = channel.read(buffer) < 0;
+                buffer.flip();
+            }
+            return buffer.remaining() >= bytes;
+        }
+
+        int getByte() throws IOException {
+            if(!fill(1)) throw new EOFException();
+            return buffer.get() & 0xFF;
+        }
+
+        long getNumber() throws IOException {
+            long ret = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = getByte();
+                ret |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return ret;
+            }
+            throw new IOException("malformed number");
+        }
+
+        int getBits(int width) throws IOException {
+            int ret = 0;
+            for(int shift = 0; shift < width; shift += 8) {
+                ret |= getByte() << shift;
+            }
+            return ret;
+        }
+
+        String getString(int length) throws IOException {
+            if(length > BUFFER_SIZE || !fill(length)) throw new EOFException();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+
+    private TraceFile() { }
+
+    static void putNumber(ByteBuffer dest, long value) {
+        while((value & ~0x7FL) != 0) {
+            dest.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dest.put((byte) value);
+    }
+
+    static void putBits(ByteBuffer dest, int bits, int width) {
+        for(int shift = 0; shift < width; shift += 8) {
+            dest.put((byte) (bits >>> shift));
+        }
+    }
+
+    static byte[] getNameBytes(String name) {
+        try {
+            return name.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException e) {
+            return name.getBytes();
+        }
+    }
+
+    /** Writes the trace as a Value Change Dump, in which each propagation
+     * is one unit of time. Each segment of the trace is a scope of its
+     * own, and follows the previous segment in time. */
+    static void exportVcd(File trace, File vcd) throws IOException {
+        // first find each segment's signals, so they can be declared
+        ArrayList segments = new ArrayList(); // of ArrayLists of Signals
+        read(trace, segments, null);
+
+        BufferedWriter out = new BufferedWriter(new FileWriter(vcd));
+        try {
+            out.write("$date " + new Date() + " $end\n");
+            out.write("$version Logisim $end\n");
+            out.write("$comment each time unit is one propagation $end\n");
+            out.write("$timescale 1 ns $end\n");
+            int codes = 0;
+            for(int i = 0; i < segments.size(); i++) {
+                out.write("$scope module log" + (i + 1) + " $end\n");
+                ArrayList signals = (ArrayList) segments.get(i);
+                for(int j = 0; j < signals.size(); j++) {
+                    Signal sig = (Signal) signals.get(j);
+                    if(sig == null) continue;
+                    sig.code = toCode(codes++);
+                    out.write("$var wire " + Math.max(sig.width, 1) + " "
+                            + sig.code + " " + toReference(sig.name) + " $end\n");
+                }
+                out.write("$upscope $end\n");
+            }
+            out.write("$enddefinitions $end\n");
+            read(trace, segments, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // Reads the trace. Without an output, this adds each segment's signals
+    // to segments; with one, it writes the value changes to it.
+    private static void read(File trace, ArrayList segments,
+            BufferedWriter out) throws IOException {
+        FileInputStream stream = new FileInputStream(trace);
+        try {
+            Input in = new Input(stream.getChannel());
+            ArrayList signals = null;
+            int[] widths = new int[0]; // of each id, as last defined
+            int segment = -1;
+            long base = 0; // time at which the segment began
+            long time = 0;
+            StringBuffer line = new StringBuffer();
+            while(in.fill(1)) {
+                int type = in.getByte();
+                if(type == MAGIC[0]) {
+                    for(int i = 1; i < MAGIC.length; i++) {
+                        if(in.getByte() != MAGIC[i]) {
+                            throw new IOException("not a trace file");
+                        }
+                    }
+                    if(in.getByte() != VERSION) {
+                        throw new IOException("unsupported trace version");
+                    }
+                    segment++;
+                    if(out == null) {
+                        signals = new ArrayList();
+                        segments.add(signals);
+                    } else {
+                        signals = (ArrayList) segments.get(segment);
+                    }
+                    widths = new int[0];
+                    base = segment == 0 ? 0 : time + 1;
+                    time = base;
+                } else if(signals == null) {
+                    throw new IOException("not a trace file");
+                } else if(type == SIGNAL) {
+                    int id = (int) in.getNumber();
+                    int width = (int) in.getNumber();
+                    String name = in.getString((int) in.getNumber());
+                    if(id < 0 || width < 0 || width > 32) {
+                        throw new IOException("malformed signal");
+                    }
+                    if(id >= widths.length) {
+                        int[] a = new int[Math.max(id + 1, 2 * widths.length)];
+                        System.arraycopy(widths, 0, a, 0, widths.length);
+                        widths = a;
+                    }
+                    widths[id] = width;
+                    if(out == null) {
+                        while(signals.size() <= id) signals.add(null);
+                        Signal sig = (Signal) signals.get(id);
+                        if(sig == null) {
+                            sig = new Signal();
+                            signals.set(id, sig);
+                        }
+                        sig.name = name;
+                        sig.width = Math.max(sig.width, width);
+                    }
+                } else if(type == SAMPLE) {
+                    time += in.getNumber();
+                    int count = (int) in.getNumber();
+                    if(out != null) out.write("#" + time + "\n");
+                    for(int i = 0; i < count; i++) {
+                        long key = in.getNumber();
+                        int id = (int) (key >>> 1);
+                        if(id >= widths.length) {
+                            throw new IOException("undefined signal");
+                        }
+                        int width = widths[id];
+                        int lo = in.getBits(width);
+                        int hi = (key & 1) != 0 ? in.getBits(width) : 0;
+                        if(out != null) {
+                            Signal sig = (Signal) signals.get(id);
+                            line.setLength(0);
+                            appendValue(line, sig, width, lo, hi);
+                            out.write(line.toString());
+                        }
+                    }
+                } else {
+                    throw new IOException("malformed trace");
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void appendValue(StringBuffer dest, Signal sig,
+            int width, int lo, int hi) {
+        int declared = Math.max(sig.width, 1);
+        if(declared > 1) dest.append('b');
+        for(int i = declared - 1; i >= 0; i--) {
+            if(i >= width) {
+                dest.append('x');
+            } else if(((hi >>> i) & 1) != 0) {
+                dest.append(((lo >>> i) & 1) != 0 ? 'x' : 'z');
+            } else {
+                dest.append(((lo >>> i) & 1) != 0 ? '1' : '0');
+            }
+        }
+        if(declared > 1) dest.append(' ');
+        dest.append(sig.code);
+        dest.append('\n');
+    }
+
+    // VCD identifiers are strings of printable characters.
+    private static String toCode(int index) {
+        StringBuffer ret = new StringBuffer();
+        do {
+            ret.append((char) ('!' + index % 94));
+            index /= 94;
+        } while(index > 0);
+        return ret.toString();
+    }
+
+    private static String toReference(String name) {
+        StringBuffer ret = new StringBuffer();
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            ret.append(c <= ' ' || c > '~' ? '_' : c);
+        }
+        return ret.length() == 0 ? "_" : ret.toString();
+    }
+}
@@ -0,0 +1,210 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+import com.cburch.logisim.data.Value;
+
+/** Appends samples to a binary trace file (see TraceFile) from a thread
+ * of its own, so that the simulator only copies each sample's values.
+ * The simulator waits only if it gets far ahead of the writing. */
+class TraceWriter extends Thread {
+    // file will be written with at least this frequency
+    private static final int FLUSH_FREQUENCY = 500;
+
+    // samples that may wait to be written before the simulator waits
+    private static final int MAX_PENDING = 4096;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static class Sample {
+        long time;
+        String[] names; // non-null if the signals changed before this sample
+        int[] widths;
+        long[] values; // packed, as by Value.toPacked
+    }
+
+    private FileChannel channel;
+    private LinkedList pending = new LinkedList(); // of Samples; also the lock
+    private String[] nextNames = null; // names for the next sample
+    private boolean closed = false;
+    private volatile boolean failed = false;
+
+    // used only by the writing thread
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private String[] names = new String[0];
+    private int[] widths = new int[0];
+    private long[] lastValues = new long[0];
+    private boolean[] defined = new boolean[0];
+    private long lastTime = 0;
+
+    public TraceWriter(File file) throws IOException {
+        channel = new FileOutputStream(file, true).getChannel();
+        buffer.put(TraceFile.MAGIC);
+        buffer.put((byte) TraceFile.VERSION);
+        setDaemon(true);
+    }
+
+    /** Returns whether writing the file has failed, after which samples
+     * are discarded. */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /** Names the signals, in the order their values are given to
+     * addSample from now on. */
+    public void setSignals(String[] value) {
+        synchronized(pending) {
+            nextNames = (String[]) value.clone();
+        }
+    }
+
+    public void addSample(long time, Value[] values) {
+        Sample sample = new Sample();
+        sample.time = time;
+        sample.widths = new int[values.length];
+        sample.values = new long[values.length];
+        for(int i = 0; i < values.length; i++) {
+            Value v = values[i];
+            if(v != null) {
+                sample.widths[i] = v.getWidth();
+                sample.values[i] = v.toPacked();
+            }
+        }
+        synchronized(pending) {
+            while(pending.size() >= MAX_PENDING && !closed && !failed) {
+                try {
+                    pending.wait();
+                } catch(InterruptedException e) { }
+            }
+            if(closed || failed) return;
+            sample.names = nextNames;
+            nextNames = null;
+            pending.addLast(sample);
+            pending.notifyAll();
+        }
+    }
+
+    /** Writes the samples added so far and closes the file. */
+    public void close() {
+        synchronized(pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+        try {
+            join();
+        } catch(InterruptedException e) { }
+    }
+
+    public void run() {
+        long lastFlush = System.currentTimeMillis();
+        try {
+            while(true) {
+                Object[] batch;
+                boolean done;
+                synchronized(pending) {
+                    if(pending.isEmpty() && !closed) {
+                        try {
+                            pending.wait(FLUSH_FREQUENCY);
+                        } catch(InterruptedException e) { }
+                    }
+                    batch = pending.toArray();
+                    pending.clear();
+                    done = closed;
+                    pending.notifyAll();
+                }
+                for(int i = 0; i < batch.length; i++) {
+                    writeSample((Sample) batch[i]);
+                }
+                long now = System.currentTimeMillis();
+                if(done || now - lastFlush >= FLUSH_FREQUENCY) {
+                    flush();
+                    lastFlush = now;
+                }
+                if(done) break;
+            }
+        } catch(IOException e) {
+            failed = true;
+            synchronized(pending) {
+                pending.clear();
+                pending.notifyAll();
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch(IOException e) { }
+        }
+    }
+
+    private void writeSample(Sample sample) throws IOException {
+        int n = sample.values.length;
+        if(sample.names != null) {
+            names = sample.names;
+            defined = new boolean[n];
+        }
+        if(widths.length != n) {
+            widths = new int[n];
+            lastValues = new long[n];
+            boolean[] newDefined = new boolean[n];
+            System.arraycopy(defined, 0, newDefined, 0, Math.min(n, defined.length));
+            defined = newDefined;
+        }
+
+        // define the signals that are new or have changed width
+        int changed = 0;
+        for(int i = 0; i < n; i++) {
+            int width = sample.widths[i];
+            if(!defined[i] || widths[i] != width) {
+                byte[] name = TraceFile.getNameBytes(i < names.length ? names[i] : "");
+                reserve(16 + name.length);
+                buffer.put((byte) TraceFile.SIGNAL);
+                TraceFile.putNumber(buffer, i);
+                TraceFile.putNumber(buffer, width);
+                TraceFile.putNumber(buffer, name.length);
+                buffer.put(name);
+                defined[i] = true;
+                widths[i] = width;
+                lastValues[i] = ~sample.values[i]; // so it is written
+            }
+            if(lastValues[i] != sample.values[i]) changed++;
+        }
+
+        reserve(21);
+        buffer.put((byte) TraceFile.SAMPLE);
+        TraceFile.putNumber(buffer, sample.time - lastTime);
+        TraceFile.putNumber(buffer, changed);
+        lastTime = sample.time;
+        for(int i = 0; i < n; i++) {
+            long value = sample.values[i];
+            if(lastValues[i] == value) continue;
+            lastValues[i] = value;
+            int hi = (int) (value >>> 32);
+            reserve(13);
+            TraceFile.putNumber(buffer, ((long) i << 1) | (hi != 0 ? 1 : 0));
+            TraceFile.putBits(buffer, (int) value, widths[i]);
+            if(hi != 0) TraceFile.putBits(buffer, hi, widths[i]);
+        }
+    }
+
+    // Ensures that the buffer has room for the given number of bytes.
+    private void reserve(int bytes) throws IOException {
+        if(buffer.remaining() >= bytes) return;
+        flush();
+        if(buffer.remaining() < bytes) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -1,46 +1,78 @@
 /* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
  * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
- 
+
 package com.cburch.logisim.gui.log;
 
+import java.util.Arrays;
+
 import com.cburch.logisim.data.Value;
 
+/** The values logged for one selected item. The most recent entries are
+ * kept in memory; each time they fill a block, the block is written to
+ * the model's LogHistory, so that no entry is lost however many are
+ * logged. If the history cannot be written, only recent entries are
+ * kept. */
 class ValueLog {
-    private static final int LOG_SIZE = 400;
-
-    private Value[] log;
-    private short curSize;
-    private short firstIndex;
-    
-    public ValueLog() {
-        log = new Value[LOG_SIZE];
-        curSize = 0;
-        firstIndex = 0;
+    private static final int TAIL_SIZE = LogHistory.BLOCK_ENTRIES;
+
+    private LogHistory history;
+    private int[] blocks = new int[16]; // blocks in history, oldest first
+    private int blockCount = 0;
+    private Value[] tail = new Value[TAIL_SIZE]; // entries after the blocks
+    private int tailSize = 0;
+
+    public ValueLog(LogHistory history) {
+        this.history = history;
     }
-    
-    public int size() {
-        return curSize;
+
+    public synchronized int size() {
+        return blockCount * TAIL_SIZE + tailSize;
     }
-    
-    public Value get(int index) {
-        int i = firstIndex + index;
-        if(i >= LOG_SIZE) i -= LOG_SIZE;
-        return log[i];
+
+    public synchronized Value get(int index) {
+        int block = index / TAIL_SIZE;
+        if(block < blockCount) {
+            return history.read(blocks[block], index % TAIL_SIZE);
+        } else {
+            return tail[index - blockCount * TAIL_SIZE];
+        }
     }
-    
-    public Value getLast() {
-        return curSize < LOG_SIZE ? (curSize == 0 ? null : log[curSize - 1])
-                : (firstIndex == 0 ? log[curSize - 1] : log[firstIndex - 1]);
+
+    public synchronized Value getLast() {
+        if(tailSize > 0) return tail[tailSize - 1];
+        if(blockCount > 0) return history.read(blocks[blockCount - 1], TAIL_SIZE - 1);
+        return null;
     }
-    
-    public void append(Value val) {
-        if(curSize < LOG_SIZE) {
-            log[curSize] = val;
-            curSize++;
-        } else {
-            log[firstIndex] = val;
-            firstIndex++;
-            if(firstIndex >= LOG_SIZE) firstIndex = 0;
+
+    public synchronized void append(Value val) {
+        if(tailSize == TAIL_SIZE) {
+            int block = history.write(tail);
+            if(block >= 0) {
+                if(blockCount == blocks.length) {
+                    int[] newBlocks = new int[2 * blocks.length];
+                    System.arraycopy(blocks, 0, newBlocks, 0, blockCount);
+                    blocks = newBlocks;
+                }
+                blocks[blockCount] = block;
+                blockCount++;
+                tailSize = 0;
+            } else {
+                // keep the more recent half, discarding everything older
+                dispose();
+                int keep = TAIL_SIZE / 2;
+                System.arraycopy(tail, TAIL_SIZE - keep, tail, 0, keep);
+                Arrays.fill(tail, keep, TAIL_SIZE, null);
+                tailSize = keep;
+            }
         }
+        tail[tailSize] = val;
+        tailSize++;
+    }
+
+    /** Releases the log's blocks in the history, emptying all but the
+     * entries still in memory. */
+    public synchronized void dispose() {
+        for(int i = 0; i < blockCount; i++) history.release(blocks[i]);
+        blockCount = 0;
     }
 }
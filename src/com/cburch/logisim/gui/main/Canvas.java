@@ -11,6 +11,8 @@ import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.InputEvent;
@@ -24,6 +26,7 @@ import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitEvent;
 import com.cburch.logisim.circuit.CircuitListener;
 import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.Simulator;
 import com.cburch.logisim.circuit.SimulatorEvent;
 import com.cburch.logisim.circuit.SimulatorListener;
 import com.cburch.logisim.circuit.WidthIncompatibilityData;
@@ -65,6 +68,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.event.MouseInputListener;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
@@ -73,13 +77,27 @@ public class Canvas extends JPanel
         implements LocaleListener, Scrollable {
     private static final int BOUNDS_BUFFER = 70;
         // pixels shown in canvas beyond outermost boundaries
+    private static final int CHANGE_MARGIN = 10;
+        // pixels repainted beyond components whose values change
+    private static final int MAX_FRAME_RATE = 30;
+        // most snapshots of a running simulation drawn per second
     static final double SQRT_2 = Math.sqrt(2.0);
     private static final int BUTTONS_MASK = InputEvent.BUTTON1_MASK
         | InputEvent.BUTTON2_MASK | InputEvent.BUTTON3_MASK;
 
+    private static class Snapshot {
+        CircuitState source;
+        CircuitState copy;
+
+        Snapshot(CircuitState source, CircuitState copy) {
+            this.source = source;
+            this.copy = copy;
+        }
+    }
+
     private class MyListener
             implements MouseInputListener, KeyListener, PopupMenuListener, ComponentListener,
-                PropertyChangeListener {
+                PropertyChangeListener, ActionListener {
         boolean menu_on = false;
 
         //
@@ -227,6 +245,15 @@ public class Canvas extends JPanel
                 repaint();
             }
         }
+
+        //
+        // ActionListener methods
+        //
+        public void actionPerformed(ActionEvent e) {
+            // from publishTimer: changes are waiting to be published, which
+            // happens when the simulator next completes a propagation
+            proj.getSimulator().requestPropagate();
+        }
     }
 
     private class MyProjectListener
@@ -273,6 +300,7 @@ public class Canvas extends JPanel
         }
 
         public void circuitChanged(CircuitEvent event) {
+            snapshot = null; // its values may no longer match the circuit
             int act = event.getAction();
             if(act == CircuitEvent.ACTION_REMOVE) {
                 Component c = (Component) event.getData();
@@ -301,11 +329,42 @@ public class Canvas extends JPanel
                 repaint();
             }
             */
-            repaint();
-        }
-        public void tickCompleted(SimulatorEvent e) {
-            waitForRepaintDone();
+            // We are in the simulator's thread, so the state is not
+            // changing under us: this is when it can be copied for drawing.
+            Simulator sim = proj.getSimulator();
+            CircuitState state = proj.getCircuitState();
+            Bounds changed = state.getChangedBounds();
+            if(fullRepaintRequested || changed == null
+                    || !sim.isRunning() || sim.isOscillating()) {
+                // stepping and oscillation draw points of their own
+                fullRepaintRequested = false;
+                unpublished = null;
+            } else if(unpublished != null && changed != Bounds.EMPTY_BOUNDS) {
+                unpublished = unpublished.add(changed);
+            }
+            if(unpublished == Bounds.EMPTY_BOUNDS) return;
+
+            long now = System.currentTimeMillis();
+            long wait = lastPublished + 1000 / MAX_FRAME_RATE - now;
+            if(wait > 0) {
+                // too soon after the last one; come back for it later
+                if(!publishTimer.isRunning()) {
+                    publishTimer.setInitialDelay((int) wait);
+                    publishTimer.start();
+                }
+                return;
+            }
+            lastPublished = now;
+            snapshot = new Snapshot(state, state.createSnapshot());
+            if(unpublished == null) {
+                repaint();
+            } else {
+                Bounds bds = unpublished.expand(CHANGE_MARGIN);
+                repaint(bds.getX(), bds.getY(), bds.getWidth(), bds.getHeight());
+            }
+            unpublished = Bounds.EMPTY_BOUNDS;
         }
+        public void tickCompleted(SimulatorEvent e) { }
         public void simulatorStateChanged(SimulatorEvent e) { }
 
         public void attributeListChanged(AttributeEvent e) { }
@@ -485,7 +544,12 @@ public class Canvas extends JPanel
     private double zoomFactor = 1.0;
     private boolean paintDirty = false; // only for within paintComponent
     private boolean inPaint = false; // only for within paintComponent
-    private Object repaintLock = new Object(); // for waitForRepaintDone
+    private volatile boolean fullRepaintRequested = true; // at next propagationCompleted
+    private volatile Snapshot snapshot = null; // what paintComponent draws, if current
+    private long lastPublished = 0; // when snapshot was made; simulator thread only
+    private Bounds unpublished = Bounds.EMPTY_BOUNDS; // changes not yet in snapshot,
+        // null if everything; simulator thread only
+    private Timer publishTimer;
 
     private Component haloedComponent = null;
     private Circuit haloedCircuit = null;
@@ -499,6 +563,9 @@ public class Canvas extends JPanel
         addMouseMotionListener(myListener);
         addKeyListener(myListener);
 
+        publishTimer = new Timer(0, myListener);
+        publishTimer.setRepeats(false);
+
         proj.addProjectListener(myProjectListener);
         proj.addLibraryListener(myProjectListener);
         proj.addCircuitListener(myProjectListener);
@@ -548,6 +615,14 @@ public class Canvas extends JPanel
         return proj;
     }
 
+    /** Returns the latest snapshot of the current circuit state, or the
+     * state itself if there is no snapshot of it. */
+    private CircuitState getStateToDraw() {
+        CircuitState state = proj.getCircuitState();
+        Snapshot snap = snapshot;
+        return snap != null && snap.source == state ? snap.copy : state;
+    }
+
     public boolean getShowGhosts() { return showGhosts; }
 
     public boolean getShowHalo() { return showHalo; }
@@ -593,6 +668,8 @@ public class Canvas extends JPanel
     private void completeAction() {
         computeSize();
         // TODO for SimulatorPrototype: proj.getSimulator().releaseUserEvents();
+        snapshot = null;
+        fullRepaintRequested = true;
         proj.getSimulator().requestPropagate();
         // repaint will occur after propagation completes
     }
@@ -626,15 +703,6 @@ public class Canvas extends JPanel
         setPreferredSize(new Dimension(width, height));
         revalidate();
     }
-    private void waitForRepaintDone() {
-        synchronized(repaintLock) {
-            try {
-                while(inPaint) {
-                    repaintLock.wait();
-                }
-            } catch(InterruptedException e) { }
-        }
-    }
     public void paintComponent(Graphics g) {
         inPaint = true;
         try {
@@ -645,9 +713,6 @@ public class Canvas extends JPanel
             if(parent == null) viewport.paintContents(g);
         } finally {
             inPaint = false;
-            synchronized(repaintLock) {
-                repaintLock.notifyAll();
-            }
         }
     }
     private void paintContents(Graphics g) {
@@ -728,7 +793,7 @@ public class Canvas extends JPanel
         }
 
         // draw circuit and selection
-        CircuitState circState = proj.getCircuitState();
+        CircuitState circState = getStateToDraw();
         ComponentDrawContext context = new ComponentDrawContext(this,
                 circ, circState, base, g, printView);
         circ.draw(context, hidden);
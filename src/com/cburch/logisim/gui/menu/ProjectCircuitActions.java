@@ -18,15 +18,19 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 
 import com.cburch.logisim.analyze.gui.Analyzer;
 import com.cburch.logisim.analyze.gui.AnalyzerManager;
 import com.cburch.logisim.analyze.model.AnalyzerModel;
+import com.cburch.logisim.analyze.model.Entry;
 import com.cburch.logisim.circuit.Analyze;
 import com.cburch.logisim.circuit.AnalyzeException;
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitActions;
 import com.cburch.logisim.circuit.Pin;
+import com.cburch.logisim.circuit.TableProgress;
 import com.cburch.logisim.comp.EndData;
 import com.cburch.logisim.file.LogisimFileActions;
 import com.cburch.logisim.proj.Project;
@@ -195,9 +199,72 @@ public class ProjectCircuitActions {
                     JOptionPane.INFORMATION_MESSAGE);
         }
         
-        // As a backup measure, we compute a truth table.
-        Analyze.computeTable(analyzer.getModel(), proj, circuit, pinNames);
-        analyzer.setSelectedTab(Analyzer.TABLE_TAB);
+        // As a backup measure, we compute a truth table. This can take
+        // a while, so it happens in a separate thread with a monitor.
+        ProgressMonitor monitor = new ProgressMonitor(proj.getFrame(),
+                Strings.get("analyzeTableProgress"), null, 0, 10000);
+        monitor.setMillisToDecideToPopup(100);
+        monitor.setMillisToPopup(200);
+        monitor.setProgress(0);
+        new TableThread(proj, circuit, analyzer, pinNames, monitor).start();
+    }
+    
+    private static class TableThread extends Thread implements TableProgress {
+        Project proj;
+        Circuit circuit;
+        Analyzer analyzer;
+        Map pinNames;
+        ProgressMonitor monitor;
+        int progress = 0; // last reported to monitor
+        
+        TableThread(Project proj, Circuit circuit, Analyzer analyzer,
+                Map pinNames, ProgressMonitor monitor) {
+            this.proj = proj;
+            this.circuit = circuit;
+            this.analyzer = analyzer;
+            this.pinNames = pinNames;
+            this.monitor = monitor;
+        }
+        
+        public void run() {
+            // The rows are computed here, but the model and the monitor
+            // belong to the event thread, so only it touches them.
+            Entry[][] columns = null;
+            try {
+                columns = Analyze.computeTableColumns(proj, circuit,
+                        pinNames, this);
+            } finally {
+                final Entry[][] result = columns;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        monitor.close();
+                        if(result != null) {
+                            Analyze.setTable(analyzer.getModel(), pinNames, result);
+                            analyzer.setSelectedTab(Analyzer.TABLE_TAB);
+                        }
+                    }
+                });
+            }
+        }
+        
+        public void rowsCompleted(int rowsDone, int rowCount) {
+            // called by each of the threads computing rows; only
+            // progress beyond what was already reported is passed on
+            final int value = (int) (10000L * rowsDone / rowCount);
+            synchronized(this) {
+                if(value <= progress) return;
+                progress = value;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        monitor.setProgress(value);
+                    }
+                });
+            }
+        }
+        
+        public boolean isCanceled() {
+            return monitor.isCanceled();
+        }
     }
         
     private static void analyzeError(Project proj, String message) {
@@ -35,6 +35,10 @@ class SimulateOptions extends OptionsPanel {
                 AttributeSet attrs = getOptions().getAttributeSet();
                 getProject().doAction(OptionsActions.setAttribute(attrs, Options.sim_rand_attr,
                         simRandomness.isSelected() ? Options.sim_rand_dflt : IntegerFactory.ZERO));
+            } else if(source == simLevelize) {
+                AttributeSet attrs = getOptions().getAttributeSet();
+                getProject().doAction(OptionsActions.setAttribute(attrs, Options.sim_levelize_attr,
+                        Boolean.valueOf(simLevelize.isSelected())));
             }
         }
         
@@ -46,6 +50,8 @@ class SimulateOptions extends OptionsPanel {
                 loadSimLimit((Integer) val);
             } else if(attr == Options.sim_rand_attr) {
                 loadSimRandomness((Integer) val);
+            } else if(attr == Options.sim_levelize_attr) {
+                loadSimLevelize((Boolean) val);
             }
         }
 
@@ -63,6 +69,10 @@ class SimulateOptions extends OptionsPanel {
         private void loadSimRandomness(Integer val) {
             simRandomness.setSelected(val.intValue() > 0);
         }
+        
+        private void loadSimLevelize(Boolean val) {
+            simLevelize.setSelected(val.booleanValue());
+        }
     }
     
     private MyListener myListener = new MyListener();
@@ -79,6 +89,7 @@ class SimulateOptions extends OptionsPanel {
             IntegerFactory.create(50000),
     });
     private JCheckBox simRandomness = new JCheckBox();
+    private JCheckBox simLevelize = new JCheckBox();
 
     public SimulateOptions(OptionsFrame window) {
         super(window);
@@ -89,15 +100,18 @@ class SimulateOptions extends OptionsPanel {
         simLimit.addActionListener(myListener);
         
         simRandomness.addActionListener(myListener);
+        simLevelize.addActionListener(myListener);
 
         setLayout(new TableLayout(1));
         add(simRandomness);
+        add(simLevelize);
         add(simLimitPanel);
         
         window.getOptions().getAttributeSet().addAttributeListener(myListener);
         AttributeSet attrs = getOptions().getAttributeSet();
         myListener.loadSimLimit((Integer) attrs.getValue(Options.sim_limit_attr));
         myListener.loadSimRandomness((Integer) attrs.getValue(Options.sim_rand_attr));
+        myListener.loadSimLevelize((Boolean) attrs.getValue(Options.sim_levelize_attr));
     }
 
     public String getTitle() {
@@ -110,6 +124,7 @@ class SimulateOptions extends OptionsPanel {
     
     public void localeChanged() {
         simRandomness.setText(Strings.get("simulateRandomness"));
+        simLevelize.setText(Strings.get("simulateLevelize"));
         simLimitLabel.setText(Strings.get("simulateLimit"));
     }
 }
@@ -43,6 +43,9 @@ class ExperimentalOptions extends OptionsPanel {
                 LogisimPreferences.setGraphicsAcceleration(x.value);
                 /* This won't take effect until Logisim starts again, due to limitations
                  * of the rendering pipeline and Java's interaction with it. */
+            } else if(src == simQueue) {
+                AccelOption x = (AccelOption) simQueue.getSelectedItem();
+                LogisimPreferences.setSimQueue(x.value);
             } else if(src == stretchWires) {
                 LogisimPreferences.setStretchWires(stretchWires.isSelected());
             }
@@ -52,6 +55,8 @@ class ExperimentalOptions extends OptionsPanel {
             String prop = event.getPropertyName();
             if(prop.equals(LogisimPreferences.STRETCH_WIRES)) {
                 stretchWires.setSelected(LogisimPreferences.getStretchWires());
+            } else if(prop.equals(LogisimPreferences.SIM_QUEUE)) {
+                setSelected(simQueue, LogisimPreferences.getSimQueue());
             }
         }
     }
@@ -62,6 +67,8 @@ class ExperimentalOptions extends OptionsPanel {
     private JLabel accelRestart = new JLabel();
     private JComboBox accel = new JComboBox();
     private JCheckBox stretchWires = new JCheckBox();
+    private JLabel simQueueLabel = new JLabel();
+    private JComboBox simQueue = new JComboBox();
 
     public ExperimentalOptions(PreferencesFrame window) {
         super(window);
@@ -74,12 +81,18 @@ class ExperimentalOptions extends OptionsPanel {
         JPanel accelPanel2 = new JPanel();
         accelPanel2.add(accelPanel);
         
+        JPanel simQueuePanel = new JPanel();
+        simQueuePanel.add(simQueueLabel);
+        simQueuePanel.add(simQueue);
+        
         setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
         add(Box.createGlue());
         add(accelPanel2);
         add(Box.createGlue());
         add(stretchWires);
         add(Box.createGlue());
+        add(simQueuePanel);
+        add(Box.createGlue());
         
         stretchWires.addActionListener(myListener);
         LogisimPreferences.addPropertyChangeListener(LogisimPreferences.STRETCH_WIRES,
@@ -93,7 +106,14 @@ class ExperimentalOptions extends OptionsPanel {
         accel.addActionListener(myListener);
         LogisimPreferences.addPropertyChangeListener(LogisimPreferences.GRAPHICS_ACCELERATION,
                 myListener);
-        setAccel(LogisimPreferences.getGraphicsAcceleration());
+        setSelected(accel, LogisimPreferences.getGraphicsAcceleration());
+        
+        simQueue.addItem(new AccelOption(LogisimPreferences.QUEUE_CALENDAR, Strings.getter("simQueueCalendar")));
+        simQueue.addItem(new AccelOption(LogisimPreferences.QUEUE_HEAP, Strings.getter("simQueueHeap")));
+        simQueue.addActionListener(myListener);
+        LogisimPreferences.addPropertyChangeListener(LogisimPreferences.SIM_QUEUE,
+                myListener);
+        setSelected(simQueue, LogisimPreferences.getSimQueue());
     }
 
     public String getTitle() {
@@ -108,16 +128,17 @@ class ExperimentalOptions extends OptionsPanel {
         stretchWires.setText(Strings.get("stretchWires"));
         accelLabel.setText(Strings.get("accelLabel"));
         accelRestart.setText(Strings.get("accelRestartLabel"));
+        simQueueLabel.setText(Strings.get("simQueueLabel"));
     }
     
-    private void setAccel(String value) {
-        for(int i = accel.getItemCount() - 1; i >= 0; i--) {
-            AccelOption opt = (AccelOption) accel.getItemAt(i);
+    private static void setSelected(JComboBox combo, String value) {
+        for(int i = combo.getItemCount() - 1; i >= 0; i--) {
+            AccelOption opt = (AccelOption) combo.getItemAt(i);
             if(opt.value.equals(value)) {
-                accel.setSelectedItem(opt);
+                combo.setSelectedItem(opt);
                 return;
             }
         }
-        accel.setSelectedItem(accel.getItemAt(0));
+        combo.setSelectedItem(combo.getItemAt(0));
     }
 }
@@ -34,6 +34,7 @@ public class LogisimPreferences {
     public static final String GATE_SHAPE = "gateShape";
     public static final String GRAPHICS_ACCELERATION = "graphicsAcceleration";
     public static final String STRETCH_WIRES = "stretchWires";
+    public static final String SIM_QUEUE = "simQueue";
     
     public static final String SHAPE_SHAPED = "shaped";
     public static final String SHAPE_RECTANGULAR = "rectangular";
@@ -44,6 +45,9 @@ public class LogisimPreferences {
     public static final String ACCEL_OPENGL = "opengl";
     public static final String ACCEL_D3D = "d3d";
     
+    public static final String QUEUE_CALENDAR = "calendar";
+    public static final String QUEUE_HEAP = "heap";
+    
     // class variables for holding individual preferences
     private static int templateType = TEMPLATE_PLAIN;
     private static File templateFile = null;
@@ -51,6 +55,7 @@ public class LogisimPreferences {
     private static String gateShape = SHAPE_SHAPED;
     private static String graphicsAccel = ACCEL_DEFAULT;
     private static boolean stretchWires = false;
+    private static String simQueue = QUEUE_CALENDAR;
 
     // class variables for maintaining consistency between properties,
     // internal variables, and other classes
@@ -127,6 +132,14 @@ public class LogisimPreferences {
                      * so we wouldn't handle graphics acceleration here. */
                     propertySupport.firePropertyChange(GRAPHICS_ACCELERATION, oldValue, value);
                 }
+            } else if(prop.equals(SIM_QUEUE)) {
+                String oldValue = simQueue;
+                String value = prefs.get(SIM_QUEUE, QUEUE_CALENDAR).toLowerCase();
+                if(!value.equals(oldValue)) {
+                    if(value.equals(QUEUE_HEAP)) simQueue = QUEUE_HEAP;
+                    else simQueue = QUEUE_CALENDAR;
+                    propertySupport.firePropertyChange(SIM_QUEUE, oldValue, value);
+                }
             }
         }
     }
@@ -142,6 +155,7 @@ public class LogisimPreferences {
 
                     setGraphicsAcceleration(p.get(GRAPHICS_ACCELERATION, ACCEL_DEFAULT));
                     setStretchWires(p.getBoolean(STRETCH_WIRES, false));
+                    setSimQueue(p.get(SIM_QUEUE, QUEUE_CALENDAR));
                     setAccentsReplace(p.getBoolean(ACCENTS_REPLACE, false));
                     setGateShape(p.get(GATE_SHAPE, SHAPE_SHAPED));
                     setTemplateFile(convertFile(p.get(TEMPLATE_FILE, null)));
@@ -260,6 +274,18 @@ public class LogisimPreferences {
         }
     }
     
+    public static String getSimQueue() {
+        getPrefs();
+        return simQueue;
+    }
+    
+    public static void setSimQueue(String value) {
+        getPrefs();
+        if(!simQueue.equals(value)) {
+            getPrefs().put(SIM_QUEUE, value.toLowerCase());
+        }
+    }
+    
     public static boolean getAccentsReplace() {
         getPrefs();
         return accentsReplace;
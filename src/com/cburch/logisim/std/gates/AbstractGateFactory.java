@@ -16,6 +16,7 @@ import com.cburch.logisim.data.AttributeSet;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.LogisimPreferences;
 import com.cburch.logisim.tools.WireRepairData;
@@ -72,6 +73,7 @@ abstract class AbstractGateFactory extends AbstractComponentFactory {
     
     public Object getFeature(Object key, AttributeSet attrs) {
         if(key == FACING_ATTRIBUTE_KEY) return GateAttributes.facing_attr;
+        if(key == SHARES_GRAPHICS) return Boolean.TRUE;
         return super.getFeature(key, attrs);
     }
     
@@ -171,6 +173,9 @@ abstract class AbstractGateFactory extends AbstractComponentFactory {
     protected abstract Expression computeExpression(Expression[] inputs,
             int numInputs);
 
+    protected abstract ParallelValue computeParallelOutput(ParallelValue[] inputs,
+            int numInputs);
+
     protected boolean shouldRepairWire(Component comp, WireRepairData data) {
         return false;
     }
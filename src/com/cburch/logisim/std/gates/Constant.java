@@ -12,6 +12,7 @@ import java.util.Map;
 import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.circuit.ExpressionComputer;
+import com.cburch.logisim.circuit.ParallelComputer;
 import com.cburch.logisim.comp.AbstractComponentFactory;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
@@ -29,12 +30,13 @@ import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.GraphicsUtil;
 import com.cburch.logisim.util.IntegerFactory;
 
 class Constant extends ManagedComponent
-        implements AttributeListener, ExpressionComputer {
+        implements AttributeListener, ExpressionComputer, ParallelComputer {
     public static ComponentFactory factory = new Factory();
 
     public static final Attribute facing_attr
@@ -286,6 +288,7 @@ class Constant extends ManagedComponent
     
     public Object getFeature(Object key) {
         if(key == ExpressionComputer.class) return this;
+        if(key == ParallelComputer.class) return this;
         return super.getFeature(key);
     }
     
@@ -295,5 +298,10 @@ class Constant extends ManagedComponent
                 Expressions.constant(attrs.value.toIntValue()));
     }
 
+    public void computeParallel(Map valueMap) {
+        ConstantAttributes attrs = (ConstantAttributes) getAttributeSet();
+        valueMap.put(getLocation(), ParallelValue.create(attrs.value));
+    }
+
     //TODO: Allow editing of value via text tool/attribute table
 }
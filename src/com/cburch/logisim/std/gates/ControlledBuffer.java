@@ -7,10 +7,12 @@ package com.cburch.logisim.std.gates;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.util.Map;
 
 import javax.swing.Icon;
 
 import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.ParallelComputer;
 import com.cburch.logisim.comp.AbstractComponentFactory;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
@@ -26,6 +28,7 @@ import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.tools.WireRepair;
 import com.cburch.logisim.tools.WireRepairData;
@@ -33,7 +36,7 @@ import com.cburch.logisim.util.GraphicsUtil;
 import com.cburch.logisim.util.Icons;
 
 class ControlledBuffer extends ManagedComponent
-        implements AttributeListener, WireRepair {
+        implements AttributeListener, WireRepair, ParallelComputer {
     public static ComponentFactory bufferFactory = new Factory(false);
     public static ComponentFactory inverterFactory = new Factory(true);
 
@@ -220,12 +223,33 @@ class ControlledBuffer extends ManagedComponent
     
     public Object getFeature(Object key) {
         if(key == WireRepair.class) return this;
+        if(key == ParallelComputer.class) return this;
         return super.getFeature(key);
     }
     
     public boolean shouldRepairWire(WireRepairData data) {
         return data.getPoint().equals(getEndLocation(2));
     }
+
+    public void computeParallel(Map valueMap) {
+        // When the control is not true, propagate sends a one-bit value
+        // regardless of the width, which a ParallelValue cannot mix with
+        // wider values in other lanes.
+        BitWidth width = (BitWidth) getAttributeSet().getValue(GateAttributes.width_attr);
+        if(width.getWidth() != 1) {
+            throw new UnsupportedOperationException("ControlledBuffer");
+        }
+        ParallelValue control = (ParallelValue) valueMap.get(getEndLocation(2));
+        ParallelValue in = (ParallelValue) valueMap.get(getEndLocation(1));
+        if(control == null || in == null) {
+            throw new UnsupportedOperationException("ControlledBuffer");
+        }
+        if(src.isInverter) in = in.not();
+        ParallelValue off = ParallelValue.select(control.getError(0),
+                ParallelValue.createError(1), ParallelValue.createUnknown(1));
+        valueMap.put(getEndLocation(0),
+                ParallelValue.select(control.getValue(0), in, off));
+    }
     
     private static void drawShape(Graphics oldG, AttributeSet attrs,
             int x, int y, boolean isInverter) {
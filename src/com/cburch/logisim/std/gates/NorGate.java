@@ -11,6 +11,7 @@ import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.tools.WireRepairData;
 import com.cburch.logisim.util.GraphicsUtil;
@@ -74,4 +75,8 @@ class NorGate extends AbstractGateFactory {
         }
         return Expressions.not(ret);
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        return OrGate.instance.computeParallelOutput(inputs, numInputs).not();
+    }
 }
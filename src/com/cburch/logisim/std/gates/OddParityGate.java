@@ -13,6 +13,7 @@ import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.GraphicsUtil;
 import com.cburch.logisim.util.Icons;
@@ -109,4 +110,8 @@ class OddParityGate extends AbstractGateFactory {
         }
         return ret;
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        return XorGate.xorParallel(inputs, numInputs, false);
+    }
 }
@@ -11,6 +11,7 @@ import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.tools.WireRepairData;
 import com.cburch.logisim.util.GraphicsUtil;
@@ -72,4 +73,8 @@ class XnorGate extends AbstractGateFactory {
     protected Expression computeExpression(Expression[] inputs, int numInputs) {
         return Expressions.not(XorGate.xorExpression(inputs, numInputs));
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        return XorGate.instance.computeParallelOutput(inputs, numInputs).not();
+    }
 }
@@ -11,6 +11,7 @@ import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.tools.WireRepairData;
 import com.cburch.logisim.util.GraphicsUtil;
@@ -118,4 +119,38 @@ class XorGate extends AbstractGateFactory {
         }
         return ret;
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        return xorParallel(inputs, numInputs, true);
+    }
+
+    // Mirrors computeOutput and the parity gates' computeOutput: a bit
+    // with an error in any input is an error, unknown bits count as
+    // false, and a lane where every input is entirely unknown passes
+    // the first input through. For xor, a bit is true only when exactly
+    // one input bit is true; otherwise, it is true when an odd number is.
+    protected static ParallelValue xorParallel(ParallelValue[] inputs, int numInputs,
+            boolean onlyOne) {
+        int width = inputs[0].getWidth();
+        long[] error = new long[width];
+        long[] unknown = new long[width];
+        long[] value = new long[width];
+        for(int j = 0; j < width; j++) {
+            long ones = 0;
+            long twos = 0;
+            for(int i = 0; i < numInputs; i++) {
+                long t = inputs[i].getValue(j);
+                error[j] |= inputs[i].getError(j);
+                twos |= ones & t;
+                ones ^= t;
+            }
+            value[j] = onlyOne ? ones & ~twos : ones;
+        }
+        long allUnknown = -1L;
+        for(int i = 0; i < numInputs; i++) {
+            allUnknown &= inputs[i].getUnknownLanes();
+        }
+        return ParallelValue.select(allUnknown, inputs[0],
+            ParallelValue.create(error, unknown, value));
+    }
 }
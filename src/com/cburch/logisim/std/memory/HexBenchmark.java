@@ -0,0 +1,67 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.std.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.cburch.logisim.gui.hex.HexFile;
+
+/** Times saving and loading a large memory image through HexFile. The
+ * arguments are the width of each value (default 8) and the number of
+ * values (default 16M, a 24-bit address space). A third of the values are
+ * zero, so that the image has both short and long tokens. */
+public class HexBenchmark {
+    private HexBenchmark() { }
+
+    public static void main(String[] args) throws IOException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 24;
+        int addrBits = 1;
+        while((1L << addrBits) < count) addrBits++;
+
+        MemContents src = MemContents.create(addrBits, width);
+        Random rand = new Random(1);
+        int[] values = new int[4096];
+        for(int start = 0; start < count; start += values.length) {
+            int n = Math.min(values.length, count - start);
+            if(n < values.length) values = new int[n];
+            for(int i = 0; i < n; i++) {
+                values[i] = rand.nextInt(3) == 0 ? 0 : rand.nextInt();
+            }
+            src.set(start, values);
+        }
+
+        File file = File.createTempFile("logisim", ".hex");
+        file.deleteOnExit();
+        try {
+            long start = System.currentTimeMillis();
+            HexFile.save(file, src);
+            long saveTime = System.currentTimeMillis() - start;
+
+            MemContents dst = MemContents.create(addrBits, width);
+            start = System.currentTimeMillis();
+            HexFile.open(dst, file);
+            long loadTime = System.currentTimeMillis() - start;
+
+            int errors = 0;
+            for(int i = 0; i < count; i++) {
+                if(dst.get(i) != src.get(i)) errors++;
+            }
+
+            double megabytes = file.length() / 1e6;
+            System.out.println("width " + width + ", " + count + " values, "
+                    + megabytes + " MB");
+            System.out.println("save: " + saveTime + " ms");
+            System.out.println("load: " + loadTime + " ms, "
+                    + (int) (megabytes * 1000 / Math.max(loadTime, 1)) + " MB/s");
+            if(errors > 0) {
+                System.out.println(errors + " values differ after loading");
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -3,6 +3,11 @@
  
 package com.cburch.logisim.std.memory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -24,6 +29,7 @@ class MemContents implements Cloneable, HexModel {
     private int addrBits;
     private int mask;
     private MemContentsSub.ContentsInterface[] pages;
+    private boolean[] shared; // pages that must be copied before writing
     
     private MemContents(int addrBits, int width) {
         listeners = new EventSourceWeakSupport();
@@ -78,10 +84,14 @@ class MemContents implements Cloneable, HexModel {
         try {
             MemContents ret = (MemContents) super.clone();
             ret.listeners = new EventSourceWeakSupport();
-            ret.pages = new MemContentsSub.ContentsInterface[this.pages.length];
+            // the pages are shared, and whichever contents first writes
+            // one copies it
+            ret.pages = (MemContentsSub.ContentsInterface[]) this.pages.clone();
+            ret.shared = new boolean[this.pages.length];
             for(int i = 0; i < ret.pages.length; i++) {
                 if(this.pages[i] != null) {
-                    ret.pages[i] = (MemContentsSub.ContentsInterface) this.pages[i].clone();
+                    this.shared[i] = true;
+                    ret.shared[i] = true;
                 }
             }
             return ret;
@@ -116,82 +126,45 @@ class MemContents implements Cloneable, HexModel {
         int old = pages[page] == null ? 0 : pages[page].get(offs) & mask;
         int val = value & mask;
         if(old != val) {
-            if(pages[page] == null) {
-                pages[page] = MemContentsSub.createContents(PAGE_SIZE, width);
-            }
+            ensurePage(page);
             pages[page].set(offs, val);
             fireBytesChanged(addr, 1, new int[] { old });
         }
     }
 
     public void set(long start, int[] values) {
-        int pageStart = (int) (start >>> PAGE_SIZE_BITS);
-        int startOffs = (int) (start & PAGE_MASK);
-        int pageEnd = (int) ((start + values.length) >>> PAGE_SIZE_BITS);
-        int endOffs = (int) ((start + values.length) & PAGE_MASK);
-
-        if(pageStart == pageEnd) {
-            ensurePage(pageStart);
-            MemContentsSub.ContentsInterface page = pages[pageStart];
-            if(!page.matches(values, startOffs, mask)) {
-                int[] oldValues = page.get(startOffs, values.length);
-                page.load(startOffs, values, mask);
-                if(page.isClear()) pages[pageStart] = null;
-                fireBytesChanged(start, values.length, oldValues);
-            }
-        } else {
-            if(startOffs == 0) {
-                pageStart--;
-                startOffs = PAGE_SIZE;
-            } else {
-                ensurePage(pageStart);
-                int[] vals = new int[PAGE_SIZE - startOffs];
-                System.arraycopy(values, 0, vals, 0, vals.length);
-                MemContentsSub.ContentsInterface page = pages[pageStart];
-                if(!page.matches(vals, startOffs, mask)) {
-                    int[] oldValues = page.get(startOffs, vals.length);
-                    page.load(startOffs, vals, mask);
-                    if(page.isClear()) pages[pageStart] = null;
-                    fireBytesChanged(start, PAGE_SIZE - pageStart, oldValues);
-                }
-            }
-            int[] vals = new int[PAGE_SIZE];
-            int offs = PAGE_SIZE - startOffs;
-            for(int i = pageStart + 1; i < pageEnd; i++, offs += PAGE_SIZE) {
-                MemContentsSub.ContentsInterface page = pages[i];
-                if(page == null) {
-                    boolean allZeroes = true;
-                    for(int j = 0; j < PAGE_SIZE; j++) {
-                        if((values[j] & mask) == 0) { allZeroes = false; break; }
-                    }
-                    if(!allZeroes) {
-                        page = MemContentsSub.createContents(PAGE_SIZE, width);
-                        pages[i] = page;
-                    }
-                }
-                if(page != null) {
-                    System.arraycopy(values, offs, vals, 0, PAGE_SIZE);
-                    if(!page.matches(vals, startOffs, mask)) {
-                        int[] oldValues = page.get(0, PAGE_SIZE);
-                        page.load(0, vals, mask);
-                        if(page.isClear()) pages[i] = null;
-                        fireBytesChanged((long) i << PAGE_SIZE_BITS, PAGE_SIZE, oldValues);
-                    }
-                }
-            }
-            if(endOffs > 0) {
-                ensurePage(pageEnd);
-                vals = new int[endOffs];
-                System.arraycopy(values, offs, vals, 0, endOffs);
-                MemContentsSub.ContentsInterface page = pages[pageEnd];
-                if(!page.matches(vals, startOffs, mask)) {
-                    int[] oldValues = page.get(0, endOffs);
-                    page.load(0, vals, mask);
-                    if(page.isClear()) pages[pageEnd] = null;
-                    fireBytesChanged((long) pageEnd << PAGE_SIZE_BITS, endOffs, oldValues);
-                }
-            }
+        int pos = 0;
+        while(pos < values.length) {
+            long addr = start + pos;
+            int page = (int) (addr >>> PAGE_SIZE_BITS);
+            int offs = (int) (addr & PAGE_MASK);
+            int len = Math.min(values.length - pos, PAGE_SIZE - offs);
+            setPage(page, offs, values, pos, len);
+            pos += len;
+        }
+    }
+    
+    // Loads len values, starting at pos, into a page starting at offs,
+    // writing nothing if they are already there.
+    private void setPage(int index, int offs, int[] values, int pos, int len) {
+        MemContentsSub.ContentsInterface page = pages[index];
+        boolean zeroes = isZero(values, pos, len);
+        if(page == null ? zeroes : page.matches(values, pos, offs, len, mask)) {
+            return;
+        }
+        int[] oldValues = page == null ? new int[len] : page.get(offs, len);
+        ensurePage(index);
+        page = pages[index];
+        page.load(offs, values, pos, len, mask);
+        if(zeroes && page.isClear()) pages[index] = null;
+        fireBytesChanged(((long) index << PAGE_SIZE_BITS) + offs, len, oldValues);
+    }
+    
+    private boolean isZero(int[] values, int pos, int len) {
+        for(int i = pos + len - 1; i >= pos; i--) {
+            if((values[i] & mask) != 0) return false;
         }
+        return true;
     }
     
     public void fill(long start, long len, int value) {
@@ -208,9 +181,9 @@ class MemContents implements Cloneable, HexModel {
             int[] vals = new int[(int) len];
             Arrays.fill(vals, value);
             MemContentsSub.ContentsInterface page = pages[pageStart];
-            if(!page.matches(vals, startOffs, mask)) {
+            if(!page.matches(vals, 0, startOffs, vals.length, mask)) {
                 int[] oldValues = page.get(startOffs, (int) len);
-                page.load(startOffs, vals, mask);
+                page.load(startOffs, vals, 0, vals.length, mask);
                 if(value == 0 && page.isClear()) pages[pageStart] = null;
                 fireBytesChanged(start, len, oldValues);
             }
@@ -226,9 +199,9 @@ class MemContents implements Cloneable, HexModel {
                     int[] vals = new int[PAGE_SIZE - startOffs];
                     Arrays.fill(vals, value);
                     MemContentsSub.ContentsInterface page = pages[pageStart];
-                    if(!page.matches(vals, startOffs, mask)) {
+                    if(!page.matches(vals, 0, startOffs, vals.length, mask)) {
                         int[] oldValues = page.get(startOffs, vals.length);
-                        page.load(startOffs, vals, mask);
+                        page.load(startOffs, vals, 0, vals.length, mask);
                         if(value == 0 && page.isClear()) pages[pageStart] = null;
                         fireBytesChanged(start, PAGE_SIZE - pageStart, oldValues);
                     }
@@ -244,9 +217,9 @@ class MemContents implements Cloneable, HexModel {
                 for(int i = pageStart + 1; i < pageEnd; i++) {
                     ensurePage(i);
                     MemContentsSub.ContentsInterface page = pages[i];
-                    if(!page.matches(vals, startOffs, mask)) {
+                    if(!page.matches(vals, 0, 0, PAGE_SIZE, mask)) {
                         int[] oldValues = page.get(0, PAGE_SIZE);
-                        page.load(0, vals, mask);
+                        page.load(0, vals, 0, PAGE_SIZE, mask);
                         fireBytesChanged((long) i << PAGE_SIZE_BITS, PAGE_SIZE, oldValues);
                     }
                 }
@@ -257,11 +230,12 @@ class MemContents implements Cloneable, HexModel {
                     // nothing to do
                 } else {
                     ensurePage(pageEnd);
+                    page = pages[pageEnd];
                     int[] vals = new int[endOffs];
                     Arrays.fill(vals, value);
-                    if(!page.matches(vals, startOffs, mask)) {
+                    if(!page.matches(vals, 0, 0, endOffs, mask)) {
                         int[] oldValues = page.get(0, endOffs);
-                        page.load(0, vals, mask);
+                        page.load(0, vals, 0, endOffs, mask);
                         if(value == 0 && page.isClear()) pages[pageEnd] = null;
                         fireBytesChanged((long) pageEnd << PAGE_SIZE_BITS, endOffs, oldValues);
                     }
@@ -305,6 +279,7 @@ class MemContents implements Cloneable, HexModel {
         if(addrBits < PAGE_SIZE_BITS) { pageCount = 1; pageLength = 1 << addrBits; }
         else { pageCount = 1 << (addrBits - PAGE_SIZE_BITS); pageLength = PAGE_SIZE; }
         pages = new MemContentsSub.ContentsInterface[pageCount];
+        shared = new boolean[pageCount];
         if(oldPages != null) {
             int n = Math.min(oldPages.length, pages.length);
             for(int i = 0; i < n; i++) {
@@ -335,9 +310,47 @@ class MemContents implements Cloneable, HexModel {
         return width;
     }
     
+    /** Replaces the contents with those of a raw binary image, in which
+     * each value takes one, two or four bytes, as the width requires,
+     * most significant first. The file is mapped into memory rather than
+     * read, so only the parts of it that are used are ever loaded, and
+     * a page of it is copied only when it is written. */
+    public void setImage(File file) throws IOException {
+        int bytes = width <= 8 ? 1 : (width <= 16 ? 2 : 4);
+        int pageLength = addrBits < PAGE_SIZE_BITS ? 1 << addrBits : PAGE_SIZE;
+        ByteBuffer image;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if(size > (getLastOffset() + 1) * bytes) {
+                throw new IOException(Strings.get("ramImageSizeError"));
+            }
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            in.close(); // the mapping remains valid
+        }
+        for(int i = 0; i < pages.length; i++) {
+            long start = (long) i * pageLength * bytes;
+            if(start < image.limit()) {
+                pages[i] = MemContentsSub.createMapped(image, (int) start,
+                        pageLength, width);
+                shared[i] = true;
+            } else {
+                pages[i] = null;
+            }
+        }
+        fireBytesChanged(0, getLastOffset() + 1, null);
+    }
+    
+    // Makes the page exist and be this contents' own to write.
     private void ensurePage(int index) {
         if(pages[index] == null) {
             pages[index] = MemContentsSub.createContents(PAGE_SIZE, width);
+            shared[index] = false;
+        } else if(shared[index]) {
+            pages[index] = (MemContentsSub.ContentsInterface) pages[index].clone();
+            shared[index] = false;
         }
     }
 }
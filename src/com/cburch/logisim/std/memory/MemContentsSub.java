@@ -3,6 +3,7 @@
  
 package com.cburch.logisim.std.memory;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 class MemContentsSub {
@@ -14,6 +15,11 @@ class MemContentsSub {
         else                return new IntContents(size);
     }
     
+    static ContentsInterface createMapped(ByteBuffer image, int start,
+            int size, int bits) {
+        return new MappedContents(image, start, size, bits);
+    }
+    
     static abstract class ContentsInterface implements Cloneable {
         public Object clone() {
             try {
@@ -26,11 +32,13 @@ class MemContentsSub {
         abstract int get(int addr);
         abstract void set(int addr, int value);
         abstract void clear();
-        abstract void load(int start, int[] values, int mask);
+        abstract void load(int start, int[] values, int offs, int len, int mask);
 
-        boolean matches(int[] values, int start, int mask) {
-            for(int i = 0; i < values.length; i++) {
-                if(get(start + i) != (values[i] & mask)) return false;
+        // Returns whether the len values starting at offs are already in
+        // the page, starting at start.
+        boolean matches(int[] values, int offs, int start, int len, int mask) {
+            for(int i = 0; i < len; i++) {
+                if((get(start + i) & mask) != (values[offs + i] & mask)) return false;
             }
             return true;
         }
@@ -87,10 +95,10 @@ class MemContentsSub {
             Arrays.fill(data, (byte) 0);
         }
     
-        void load(int start, int[] values, int mask) {
-            int n = Math.min(values.length, data.length - start);
+        void load(int start, int[] values, int offs, int len, int mask) {
+            int n = Math.min(len, data.length - start);
             for(int i = 0; i < n; i++) {
-                data[start + i] = (byte) (values[i] & mask);
+                data[start + i] = (byte) (values[offs + i] & mask);
             }
         }
     }
@@ -133,10 +141,10 @@ class MemContentsSub {
             Arrays.fill(data, (short) 0);
         }
     
-        void load(int start, int[] values, int mask) {
-            int n = Math.min(values.length, data.length - start);
+        void load(int start, int[] values, int offs, int len, int mask) {
+            int n = Math.min(len, data.length - start);
             for(int i = 0; i < n; i++) {
-                data[start + i] = (short) (values[i] & mask);
+                data[start + i] = (short) (values[offs + i] & mask);
             }
         }
     }
@@ -179,11 +187,66 @@ class MemContentsSub {
             Arrays.fill(data, 0);
         }
     
-        void load(int start, int[] values, int mask) {
-            int n = Math.min(values.length, data.length - start);
+        void load(int start, int[] values, int offs, int len, int mask) {
+            int n = Math.min(len, data.length - start);
             for(int i = 0; i < n; i++) {
-                data[i] = values[i] & mask;
+                data[start + i] = values[offs + i] & mask;
+            }
+        }
+    }
+    
+    // A page of an image file mapped into memory, in which each value
+    // takes as many bytes as a page of the same width holds in memory,
+    // most significant first. Values beyond the end of the image are 0.
+    // The page is never changed: MemContents copies it into a page of
+    // the usual kind before writing it, and cloning it makes that copy.
+    private static class MappedContents extends ContentsInterface {
+        private ByteBuffer image;
+        private int start; // byte offset of the page within the image
+        private int size;
+        private int bytes; // bytes per value
+        private int count; // values within the image
+
+        public MappedContents(ByteBuffer image, int start, int size, int bits) {
+            this.image = image;
+            this.start = start;
+            this.size = size;
+            this.bytes = bits <= 8 ? 1 : (bits <= 16 ? 2 : 4);
+            this.count = (int) Math.min(size, (image.limit() - start) / bytes);
+        }
+        
+        public Object clone() {
+            ContentsInterface ret = createContents(size, 8 * bytes);
+            for(int i = 0; i < count; i++) ret.set(i, get(i));
+            return ret;
+        }
+        
+        //
+        // methods for accessing data within memory
+        //
+        int getLength() {
+            return size;
+        }
+        
+        int get(int addr) {
+            if(addr < 0 || addr >= count) return 0;
+            switch(bytes) {
+            case 1:  return image.get(start + addr);
+            case 2:  return image.getShort(start + 2 * addr);
+            default: return image.getInt(start + 4 * addr);
             }
         }
+        
+        void set(int addr, int value) {
+            throw new UnsupportedOperationException("mapped page is read-only");
+        }
+    
+        void clear() {
+            throw new UnsupportedOperationException("mapped page is read-only");
+        }
+    
+        void load(int start, int[] values, int offs, int len, int mask) {
+            throw new UnsupportedOperationException("mapped page is read-only");
+        }
     }
 }
@@ -27,6 +27,7 @@ class MemMenu implements ActionListener {
     private JMenuItem edit = new JMenuItem(Strings.get("ramEditMenuItem"));
     private JMenuItem clear = new JMenuItem(Strings.get("ramClearMenuItem"));
     private JMenuItem load = new JMenuItem(Strings.get("ramLoadMenuItem"));
+    private JMenuItem loadBinary = new JMenuItem(Strings.get("ramLoadBinaryMenuItem"));
     private JMenuItem save = new JMenuItem(Strings.get("ramSaveMenuItem"));
 
     MemMenu(Project proj, Mem ram) {
@@ -39,12 +40,14 @@ class MemMenu implements ActionListener {
             edit.setEnabled(false);
             clear.setEnabled(false);
             load.setEnabled(false);
+            loadBinary.setEnabled(false);
             save.setEnabled(false);
         }
 
         edit.addActionListener(this);
         clear.addActionListener(this);
         load.addActionListener(this);
+        loadBinary.addActionListener(this);
         save.addActionListener(this);
     }
 
@@ -52,6 +55,7 @@ class MemMenu implements ActionListener {
         menu.add(edit);
         menu.add(clear);
         menu.add(load);
+        menu.add(loadBinary);
         menu.add(save);
     }
 
@@ -59,7 +63,8 @@ class MemMenu implements ActionListener {
         Object src = evt.getSource();
         if(src == edit) doEdit();
         else if(src == clear) doClear();
-        else if(src == load) doLoad();
+        else if(src == load) doLoad(false);
+        else if(src == loadBinary) doLoad(true);
         else if(src == save) doSave();
     }
 
@@ -85,7 +90,7 @@ class MemMenu implements ActionListener {
         }
     }
 
-    private void doLoad() {
+    private void doLoad(boolean binary) {
         MemState s = mem.getState(circState);
 
         JFileChooser chooser = proj.createChooser();
@@ -96,7 +101,8 @@ class MemMenu implements ActionListener {
         if(choice == JFileChooser.APPROVE_OPTION) {
             File f = chooser.getSelectedFile();
             try {
-                HexFile.open(s.getContents(), f);
+                if(binary) s.getContents().setImage(f);
+                else HexFile.open(s.getContents(), f);
                 mem.setCurrentImage(f);
             } catch(IOException e) {
                 JOptionPane.showMessageDialog(frame, e.getMessage(),
@@ -0,0 +1,182 @@
+/* Copyright (c) 2006, 2009, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.cburch.logisim.data.Bounds;
+
+/**
+ * Keeps images of drawings that never change, such as the bodies of
+ * chips and gates, so that drawing one again only copies its image.
+ * An image is made for each combination of glyph, scale, color, font
+ * and stroke, and the least recently used images are discarded once
+ * there are too many.
+ *
+ * An image is only used where it lands exactly on the screen's pixels,
+ * so that it looks just as the drawing would. Where it would not - for
+ * instance when the Graphics is rotated or is for a printer - the
+ * drawing is done directly. Either way, the Graphics is left with the
+ * color, font and stroke that the drawing leaves it with, since what is
+ * drawn next may depend on them.
+ */
+public class GlyphCache {
+    public static interface Painter {
+        /** Draws the glyph with its origin at (x, y). */
+        public void paint(Graphics g, int x, int y);
+    }
+
+    private static class Key {
+        private Object glyph;
+        private double scale;
+        private Color color;
+        private Font font;
+        private Stroke stroke;
+        private int hashCode;
+
+        Key(Object glyph, double scale, Color color, Font font, Stroke stroke) {
+            this.glyph = glyph;
+            this.scale = scale;
+            this.color = color;
+            this.font = font;
+            this.stroke = stroke;
+            long bits = Double.doubleToLongBits(scale);
+            int hash = glyph.hashCode();
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+            hash = 31 * hash + (color == null ? 0 : color.hashCode());
+            hash = 31 * hash + (font == null ? 0 : font.hashCode());
+            hash = 31 * hash + (stroke == null ? 0 : stroke.hashCode());
+            this.hashCode = hash;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) return false;
+            Key o = (Key) other;
+            return hashCode == o.hashCode && scale == o.scale
+                && glyph.equals(o.glyph)
+                && (color == null ? o.color == null : color.equals(o.color))
+                && (font == null ? o.font == null : font.equals(o.font))
+                && (stroke == null ? o.stroke == null : stroke.equals(o.stroke));
+        }
+    }
+
+    private static class Glyph {
+        BufferedImage image;
+        int dx; // pixels from glyph's bounds to image's corner
+        int dy;
+        Color color; // as the drawing leaves the Graphics
+        Font font;
+        Stroke stroke;
+
+        Glyph(BufferedImage image, int dx, int dy) {
+            this.image = image;
+            this.dx = dx;
+            this.dy = dy;
+        }
+    }
+
+    private static final int MAX_GLYPHS = 512;
+    private static final int MAX_PIXELS = 256 * 256; // larger are drawn directly
+    private static final int MARGIN = 4; // drawing may exceed bounds by this much
+
+    private static final LinkedHashMap glyphs = new LinkedHashMap(64, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > MAX_GLYPHS;
+        }
+    };
+
+    private GlyphCache() { }
+
+    /**
+     * Draws a glyph with its origin at (x, y), using a cached image of
+     * it if possible. The glyph is identified by a key, which must be
+     * equal for any two glyphs that look the same when drawn with the
+     * same color, font and stroke, and its drawing lies within the
+     * given bounds, relative to its origin.
+     */
+    public static void draw(Graphics g, Object glyph, Bounds bds,
+            int x, int y, Painter painter) {
+        if(!(g instanceof Graphics2D)) {
+            painter.paint(g, x, y);
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        AffineTransform xform = g2.getTransform();
+        int type = xform.getType() & ~(AffineTransform.TYPE_TRANSLATION
+                | AffineTransform.TYPE_UNIFORM_SCALE);
+        double scale = xform.getScaleX();
+        double px = scale * (x + bds.getX()) + xform.getTranslateX();
+        double py = scale * (y + bds.getY()) + xform.getTranslateY();
+        if(type != 0 || scale <= 0.0 || !isIntegral(px) || !isIntegral(py)
+                || (bds.getWidth() + 2 * MARGIN) * (bds.getHeight() + 2 * MARGIN)
+                    * scale * scale > MAX_PIXELS
+                || g2.getDeviceConfiguration().getDevice().getType()
+                    == GraphicsDevice.TYPE_PRINTER) {
+            painter.paint(g, x, y);
+            return;
+        }
+
+        Key key = new Key(glyph, scale, g.getColor(), g.getFont(), g2.getStroke());
+        Glyph image;
+        synchronized(glyphs) {
+            image = (Glyph) glyphs.get(key);
+        }
+        if(image == null) {
+            image = createGlyph(g2, bds, x, y, scale, painter);
+            synchronized(glyphs) {
+                glyphs.put(key, image);
+            }
+        }
+
+        g2.setTransform(new AffineTransform());
+        g2.drawImage(image.image, (int) Math.rint(px) - image.dx,
+                (int) Math.rint(py) - image.dy, null);
+        g2.setTransform(xform);
+        g2.setColor(image.color);
+        g2.setFont(image.font);
+        g2.setStroke(image.stroke);
+    }
+
+    private static Glyph createGlyph(Graphics2D g, Bounds bds,
+            int x, int y, double scale, Painter painter) {
+        int margin = (int) Math.ceil(MARGIN * scale);
+        int width = (int) Math.ceil(bds.getWidth() * scale) + 2 * margin + 1;
+        int height = (int) Math.ceil(bds.getHeight() * scale) + 2 * margin + 1;
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = image.createGraphics();
+        ig.setRenderingHints(g.getRenderingHints());
+        ig.setColor(g.getColor());
+        ig.setFont(g.getFont());
+        ig.setStroke(g.getStroke());
+        // (x + bds.getX(), y + bds.getY()) goes to (margin, margin)
+        ig.translate(margin - scale * (x + bds.getX()),
+                margin - scale * (y + bds.getY()));
+        ig.scale(scale, scale);
+        painter.paint(ig, x, y);
+        Glyph ret = new Glyph(image, margin, margin);
+        ret.color = ig.getColor();
+        ret.font = ig.getFont();
+        ret.stroke = ig.getStroke();
+        ig.dispose();
+        return ret;
+    }
+
+    private static boolean isIntegral(double value) {
+        return Math.abs(value - Math.rint(value)) < 1e-6;
+    }
+}
@@ -6,11 +6,15 @@ package tr.edu.metu.ceng.ceng232.gates;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.EndSlots;
 import com.cburch.logisim.circuit.ExpressionComputer;
+import com.cburch.logisim.circuit.ParallelComputer;
+import com.cburch.logisim.circuit.SlotPropagator;
 import com.cburch.logisim.comp.ComponentFactory;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.comp.EndData;
@@ -21,13 +25,17 @@ import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.LogisimPreferences;
 import com.cburch.logisim.tools.WireRepair;
 import com.cburch.logisim.tools.WireRepairData;
+import com.cburch.logisim.util.GlyphCache;
+import com.cburch.logisim.util.IntegerFactory;
 
 class AbstractGate extends ManagedComponent
-        implements WireRepair, ExpressionComputer {
+        implements WireRepair, ExpressionComputer, ParallelComputer,
+            SlotPropagator {
     private AbstractGateFactory src;
     
     public AbstractGate(Location loc, AttributeSet attrs, AbstractGateFactory src) {
@@ -99,6 +107,21 @@ class AbstractGate extends ManagedComponent
         state.setValue(getEndLocation(0), out, this, GateAttributes.DELAY);
     }
 
+    public void propagate(CircuitState state, EndSlots slots) {
+        GateAttributes attrs = (GateAttributes) getAttributeSet();
+        Value[] inputs = slots.getBuffer(attrs.inputs);
+        int num_inputs = 0;
+        for(int i = 1; i <= attrs.inputs; i++) {
+            Value v = slots.get(i);
+            if(v != Value.NIL) {
+                inputs[num_inputs] = v;
+                num_inputs++;
+            }
+        }
+        Value out = src.computeOutput(inputs, num_inputs);
+        slots.set(0, out, GateAttributes.DELAY);
+    }
+
     //
     // user interface methods
     //
@@ -108,16 +131,60 @@ class AbstractGate extends ManagedComponent
         Location loc = getLocation();
         Bounds bds = getBounds();
         context.getGraphics().setColor(Color.BLACK);
-        drawBase(context, src, this, attrs, loc.getX(), loc.getY(),
-                bds.getWidth(), bds.getHeight());
+        if(context.isPrintView()) {
+            drawBase(context, src, this, attrs, loc.getX(), loc.getY(),
+                    bds.getWidth(), bds.getHeight());
+        } else {
+            drawCachedBase(context, attrs, loc, bds);
+        }
         if(!context.isPrintView() || context.getGateShape() == LogisimPreferences.SHAPE_RECTANGULAR) {
             context.drawPins(this);
         }
     }
     
+    // Draws what drawBase does, but copies the parts that never show
+    // values from a cached image. A shaped gate's input lines show the
+    // inputs' values, so they are drawn directly, before the image just
+    // as drawBase would; a DIN 40700 gate's output line shows the
+    // output's value, so its color is part of the image's key.
+    private void drawCachedBase(final ComponentDrawContext context,
+            final GateAttributes attrs, Location loc, Bounds bds) {
+        int x = loc.getX();
+        int y = loc.getY();
+        final int width = bds.getWidth();
+        final int height = bds.getHeight();
+        Object shape = context.getGateShape();
+        Object output = null;
+        if(shape == LogisimPreferences.SHAPE_DIN40700) {
+            CircuitState state = context.getCircuitState();
+            if(state != null) output = state.getValue(loc).getColor();
+        } else if(shape != LogisimPreferences.SHAPE_RECTANGULAR) {
+            drawBase(context, src, this, attrs, x, y, width, height, false, true);
+        }
+        Object glyph = Arrays.asList(new Object[] { src, shape, attrs.facing,
+                attrs.size, IntegerFactory.create(attrs.inputs), output });
+        GlyphCache.draw(context.getGraphics(), glyph, bds.translate(-x, -y),
+                x, y, new GlyphCache.Painter() {
+            public void paint(Graphics g, int x, int y) {
+                Graphics oldG = context.getGraphics();
+                context.setGraphics(g);
+                drawBase(context, src, AbstractGate.this, attrs, x, y,
+                        width, height, true, false);
+                context.setGraphics(oldG);
+            }
+        });
+    }
+
     static void drawBase(ComponentDrawContext context,
             AbstractGateFactory src, AbstractGate comp,
             GateAttributes attrs, int x, int y, int width, int height) {
+        drawBase(context, src, comp, attrs, x, y, width, height, true, true);
+    }
+
+    private static void drawBase(ComponentDrawContext context,
+            AbstractGateFactory src, AbstractGate comp,
+            GateAttributes attrs, int x, int y, int width, int height,
+            boolean drawBody, boolean drawInputLines) {
         Direction facing = attrs.facing;
         Graphics oldG = context.getGraphics();
         if(facing != Direction.EAST && oldG instanceof Graphics2D) {
@@ -130,20 +197,24 @@ class AbstractGate extends ManagedComponent
         }
         
         if(context.getGateShape() == LogisimPreferences.SHAPE_RECTANGULAR) {
-            src.drawRectangular(context, x, y, width, height);
+            if(drawBody) src.drawRectangular(context, x, y, width, height);
         } else if(context.getGateShape() == LogisimPreferences.SHAPE_DIN40700) {
-            Integer inputs = (Integer) attrs.getValue(GateAttributes.inputs_attr);
-            src.drawDinShape(context, x, y, width, height,
-                    inputs.intValue(), comp);
+            if(drawBody) {
+                Integer inputs = (Integer) attrs.getValue(GateAttributes.inputs_attr);
+                src.drawDinShape(context, x, y, width, height,
+                        inputs.intValue(), comp);
+            }
         } else { // SHAPE_SHAPED
             int don = src.has_dongle ? 10 : 0;
-            if(comp != null) {
+            if(comp != null && drawInputLines) {
                 src.drawInputLines(context, comp, attrs.inputs,
                     x - width, y - (height - 10) / 2, width - don, height);
             }
-            src.drawShape(context, x - don, y, width - don, height);
-            if(src.has_dongle) {
-                context.drawDongle(x - 5, y);
+            if(drawBody) {
+                src.drawShape(context, x - don, y, width - don, height);
+                if(src.has_dongle) {
+                    context.drawDongle(x - 5, y);
+                }
             }
         }
         context.setGraphics(oldG);
@@ -152,6 +223,8 @@ class AbstractGate extends ManagedComponent
     public Object getFeature(Object key) {
         if(key == WireRepair.class) return this;
         if(key == ExpressionComputer.class) return this;
+        if(key == ParallelComputer.class) return this;
+        if(key == SlotPropagator.class) return this;
         return super.getFeature(key);
     }
     
@@ -176,6 +249,23 @@ class AbstractGate extends ManagedComponent
         }
     }
 
+    public void computeParallel(Map valueMap) {
+        GateAttributes attrs = (GateAttributes) getAttributeSet();
+        ParallelValue[] inputs = new ParallelValue[attrs.inputs];
+        int numInputs = 0;
+        for(int i = 1; i <= attrs.inputs; i++) {
+            ParallelValue v = (ParallelValue) valueMap.get(getEndLocation(i));
+            if(v != null) {
+                inputs[numInputs] = v;
+                numInputs++;
+            }
+        }
+        if(numInputs > 0) {
+            valueMap.put(getEndLocation(0),
+                src.computeParallelOutput(inputs, numInputs));
+        }
+    }
+
     void attributeValueChanged(Attribute attr, Object value) {
         if(attr == GateAttributes.width_attr) {
             setEnds();
@@ -10,6 +10,7 @@ import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.GraphicsUtil;
 import com.cburch.logisim.util.Icons;
@@ -90,4 +91,12 @@ class AndGate extends AbstractGateFactory {
         return ret;
     }
 
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        ParallelValue ret = inputs[0];
+        for(int i = 1; i < numInputs; i++) {
+            ret = ret.and(inputs[i]);
+        }
+        return ret;
+    }
+
 }
@@ -13,6 +13,7 @@ import javax.swing.Icon;
 import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.circuit.ExpressionComputer;
+import com.cburch.logisim.circuit.ParallelComputer;
 import com.cburch.logisim.comp.AbstractComponentFactory;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
@@ -28,12 +29,13 @@ import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.GraphicsUtil;
 import com.cburch.logisim.util.Icons;
 
 class Buffer extends ManagedComponent
-        implements AttributeListener, ExpressionComputer {
+        implements AttributeListener, ExpressionComputer, ParallelComputer {
     public static ComponentFactory factory = new Factory();
 
     private static final Attribute[] ATTRIBUTES
@@ -151,6 +153,7 @@ class Buffer extends ManagedComponent
     
     public Object getFeature(Object key) {
         if(key == ExpressionComputer.class) return this;
+        if(key == ParallelComputer.class) return this;
         return super.getFeature(key);
     }
 
@@ -161,6 +164,13 @@ class Buffer extends ManagedComponent
         }
     }
 
+    public void computeParallel(Map valueMap) {
+        ParallelValue in = (ParallelValue) valueMap.get(getEndLocation(1));
+        if(in != null) {
+            valueMap.put(getEndLocation(0), in);
+        }
+    }
+
     private static void drawBase(Graphics oldG, AttributeSet attrs,
             int x, int y) {
         Direction facing = (Direction) attrs.getValue(GateAttributes.facing_attr);
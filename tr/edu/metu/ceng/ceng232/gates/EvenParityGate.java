@@ -9,6 +9,7 @@ import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.util.Icons;
 
@@ -92,4 +93,8 @@ class EvenParityGate extends AbstractGateFactory {
         }
         return Expressions.not(ret);
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        return XorGate.xorParallel(inputs, numInputs, false).not();
+    }
 }
@@ -14,6 +14,7 @@ import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.Expressions;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.circuit.ExpressionComputer;
+import com.cburch.logisim.circuit.ParallelComputer;
 import com.cburch.logisim.comp.AbstractComponentFactory;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
@@ -31,6 +32,7 @@ import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.LogisimPreferences;
 import com.cburch.logisim.util.GraphicsUtil;
@@ -38,7 +40,7 @@ import com.cburch.logisim.util.Icons;
 import com.cburch.logisim.util.IntegerFactory;
 
 class NotGate extends ManagedComponent
-        implements AttributeListener, ExpressionComputer {
+        implements AttributeListener, ExpressionComputer, ParallelComputer {
     public static ComponentFactory factory = new Factory();
 
     public static final AttributeOption SIZE_NARROW
@@ -199,6 +201,7 @@ class NotGate extends ManagedComponent
     
     public Object getFeature(Object key) {
         if(key == ExpressionComputer.class) return this;
+        if(key == ParallelComputer.class) return this;
         return super.getFeature(key);
     }
 
@@ -209,6 +212,13 @@ class NotGate extends ManagedComponent
         }
     }
 
+    public void computeParallel(Map valueMap) {
+        ParallelValue in = (ParallelValue) valueMap.get(getEndLocation(1));
+        if(in != null) {
+            valueMap.put(getEndLocation(0), in.not());
+        }
+    }
+
     private static void drawBase(ComponentDrawContext context, int x, int y,
             AttributeSet attrs) {
         Graphics oldG = context.getGraphics();
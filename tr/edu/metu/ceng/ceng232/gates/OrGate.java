@@ -14,6 +14,7 @@ import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.AttributeSet;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.data.ParallelValue;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.tools.WireRepairData;
 import com.cburch.logisim.util.GraphicsUtil;
@@ -162,4 +163,12 @@ class OrGate extends AbstractGateFactory {
         }
         return ret;
     }
+
+    protected ParallelValue computeParallelOutput(ParallelValue[] inputs, int numInputs) {
+        ParallelValue ret = inputs[0];
+        for(int i = 1; i < numInputs; i++) {
+            ret = ret.or(inputs[i]);
+        }
+        return ret;
+    }
 }
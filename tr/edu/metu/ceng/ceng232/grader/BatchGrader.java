@@ -0,0 +1,148 @@
+
+package tr.edu.metu.ceng.ceng232.grader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Grades many submissions against one grading file without opening any
+ * windows. The grading file is loaded once and shared, while each
+ * submission is loaded and simulated in its own Project on one of a
+ * fixed pool of threads. The results come back in the order the files
+ * were given, and main prints each as a line of JSON.
+ *
+ * @author sazak
+ */
+public class BatchGrader {
+    private GradingFile grading;
+    private int threads;
+
+    public BatchGrader(GradingFile grading, int threads) {
+        this.grading = grading;
+        this.threads = threads < 1 ? 1 : threads;
+    }
+
+    public GradeResult grade(File file) {
+        return new SubmissionGrader(grading, file).grade();
+    }
+
+    public List<GradeResult> grade(List<File> files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<GradeResult>> futures = new ArrayList<Future<GradeResult>>();
+            for (final File file : files) {
+                futures.add(pool.submit(new Callable<GradeResult>() {
+                    public GradeResult call() {
+                        return grade(file);
+                    }
+                }));
+            }
+
+            List<GradeResult> ret = new ArrayList<GradeResult>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    ret.add(futures.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    GradeResult r = new GradeResult(files.get(i));
+                    r.error = String.valueOf(e.getCause());
+                    ret.add(r);
+                }
+            }
+            return ret;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: java " + BatchGrader.class.getName()
+                + " [-threads count] [-out file] gradingfile file...");
+    }
+
+    /**
+     * Grades the files named on the command line, printing one JSON line
+     * per submission. Returns normally, whatever the results, so that a
+     * caller embedding this decides for itself what to do next.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        File outFile = null;
+        File gradingFile = null;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-threads") && i + 1 < args.length) {
+                i++;
+                try {
+                    threads = Integer.parseInt(args[i]);
+                }
+                catch (NumberFormatException e) {
+                    printUsage();
+                    return;
+                }
+            }
+            else if (arg.equals("-out") && i + 1 < args.length) {
+                i++;
+                outFile = new File(args[i]);
+            }
+            else if (arg.startsWith("-")) {
+                printUsage();
+                return;
+            }
+            else if (gradingFile == null) {
+                gradingFile = new File(arg);
+            }
+            else {
+                files.add(new File(arg));
+            }
+        }
+        if (gradingFile == null) {
+            printUsage();
+            return;
+        }
+
+        GradingFile grading;
+        try {
+            grading = GradingFile.load(gradingFile);
+        }
+        catch (Exception e) {
+            System.err.println("Error in grading file: " + e);
+            return;
+        }
+
+        try {
+            List<GradeResult> results = new BatchGrader(grading, threads).grade(files);
+            PrintWriter out;
+            if (outFile == null)
+                out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+            else
+                out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8"));
+            for (GradeResult r : results)
+                out.println(r.toJson());
+            if (outFile == null)
+                out.flush();
+            else
+                out.close();
+        }
+        catch (InterruptedException e) {
+            System.err.println("Grading interrupted");
+        }
+        catch (IOException e) {
+            System.err.println("Cannot write results: " + e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+
+package tr.edu.metu.ceng.ceng232.grader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of grading one submission: whether it could be loaded,
+ * whether it uses only allowed chips, whether each run passed, where the
+ * first failing run went wrong and how long the whole thing took.
+ * toJson() writes all of this out as a single line.
+ *
+ * @author sazak
+ */
+public class GradeResult {
+    /** Describes the state at which a run first failed. */
+    public static class Failure {
+        protected int run;
+        protected int state;
+        protected String inputs;
+        protected String expected;
+        protected String got;
+        protected boolean oscillating;
+
+        public int getRun() { return run; }
+        public int getState() { return state; }
+        public String getInputs() { return inputs; }
+        public String getExpected() { return expected; }
+        public String getGot() { return got; }
+        public boolean isOscillating() { return oscillating; }
+    }
+
+    protected File file;
+    protected String error = null;
+    protected List<String> disallowedChips = new ArrayList<String>();
+    protected List<Boolean> runs = new ArrayList<Boolean>();
+    protected Failure firstFailure = null;
+    protected long millis;
+
+    protected GradeResult(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Returns why the submission could not be graded, or null if it was. */
+    public String getError() {
+        return error;
+    }
+
+    public boolean chipsPassed() {
+        return disallowedChips.isEmpty();
+    }
+
+    public List<String> getDisallowedChips() {
+        return disallowedChips;
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    public boolean runPassed(int run) {
+        return runs.get(run).booleanValue();
+    }
+
+    public Failure getFirstFailure() {
+        return firstFailure;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public boolean passed() {
+        return error == null && chipsPassed() && !runs.contains(Boolean.FALSE);
+    }
+
+    public String toJson() {
+        StringBuilder ret = new StringBuilder();
+        ret.append("{\"file\":");
+        appendString(ret, file.getPath());
+        ret.append(",\"status\":");
+        appendString(ret, error != null ? "error" : (passed() ? "pass" : "fail"));
+        if (error != null) {
+            ret.append(",\"error\":");
+            appendString(ret, error);
+        }
+        ret.append(",\"chips\":{\"pass\":").append(chipsPassed());
+        ret.append(",\"disallowed\":[");
+        for (int i = 0; i < disallowedChips.size(); i++) {
+            if (i > 0)
+                ret.append(',');
+            appendString(ret, disallowedChips.get(i));
+        }
+        ret.append("]},\"runs\":[");
+        for (int i = 0; i < runs.size(); i++) {
+            if (i > 0)
+                ret.append(',');
+            ret.append(runs.get(i));
+        }
+        ret.append(']');
+        if (firstFailure != null) {
+            Failure f = firstFailure;
+            ret.append(",\"firstFailure\":{\"run\":").append(f.run);
+            ret.append(",\"state\":").append(f.state);
+            ret.append(",\"inputs\":");
+            appendString(ret, f.inputs);
+            ret.append(",\"expected\":");
+            appendString(ret, f.expected);
+            ret.append(",\"got\":");
+            appendString(ret, f.got);
+            ret.append(",\"oscillating\":").append(f.oscillating);
+            ret.append('}');
+        }
+        ret.append(",\"millis\":").append(millis);
+        ret.append('}');
+        return ret.toString();
+    }
+
+    private static void appendString(StringBuilder buf, String s) {
+        if (s == null) {
+            buf.append("null");
+            return;
+        }
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                buf.append('\\').append(c);
+            else if (c == '\n')
+                buf.append("\\n");
+            else if (c == '\r')
+                buf.append("\\r");
+            else if (c == '\t')
+                buf.append("\\t");
+            else if (c < 0x20)
+                buf.append(String.format("\\u%04x", (int) c));
+            else
+                buf.append(c);
+        }
+        buf.append('"');
+    }
+}
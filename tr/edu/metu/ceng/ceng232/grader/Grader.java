@@ -8,6 +8,7 @@
 package tr.edu.metu.ceng.ceng232.grader;
 
 import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitDriver;
 import com.cburch.logisim.circuit.Clock;
 import com.cburch.logisim.circuit.Pin;
 import com.cburch.logisim.circuit.Simulator;
@@ -31,6 +32,7 @@ public class Grader {
     private Project project;
     private MyListener myListener = new MyListener();
     private Simulator simulator;
+    private CircuitDriver driver;
     private boolean initialPropagationCompleted = false;
     private Object[] inputPins;
     private Object[] outputPins;
@@ -138,7 +140,6 @@ public class Grader {
             else
                 setClockValue((Clock)inputPins[i], values[i] == '0' ? Value.FALSE : Value.TRUE);
         }
-        project.repaintCanvas();
     }
 
     public boolean checkOutputs(char[] values, char[] inp_values) {
@@ -256,107 +257,64 @@ public class Grader {
         System.out.println("CHIPS PASS");
     }
 
-    private boolean waitingNewRun = false;
-    private int curRun = 0;
-    private int curState;
-    private int curPhase = 0;
-    private Map<Integer, Integer> ifCount;
+    private void doRun(Run r) {
+        Map<Integer, Integer> ifCount = new HashMap<Integer, Integer>();
 
-    private class MyListener implements SimulatorListener {
-        public void propagationCompleted(SimulatorEvent e) {
-            //System.out.println("propagationCompleted");
-            if (!initialPropagationCompleted) {
-                initialPropagationCompleted = true;
-                fetchGradingPins();
-                
-                curRun = 0;
-                waitingNewRun = true;
-                simulator.requestReset();
+        driver.reset();
 
-                checkChips();
+        int curState = 1;
+        while (curState < r.states.size()) {
+            State s = r.states.get(curState);
 
-                //System.out.println(Settings.components);
-
-                return;
+            if (s.type == State.TYPE.REGISTER_MODIFY) {
+                // This is only used for Lab Experiment 4 in CENG232@METU.
+                // Allows the grader to modify a register's value
+                applyRegisterModify(s);
+                curState++;
             }
-
-            if (waitingNewRun) {
-                waitingNewRun = false;
-                curState = 1;
-                curPhase = 0;
-                ifCount = new HashMap<Integer, Integer>();
+            else if (s.type == State.TYPE.TRUTH_TABLE) {
+                setInputs(s.inputs);
+                driver.propagate();
+                if (!checkOutputs(s.outputs, s.inputs))
+                    return;
+                curState++;
             }
-
-            if (curRun >= Settings.runs.size())
-                return;
-
-            Run r = Settings.runs.get(curRun);
-            boolean runFailed = false;
-            while (curState < r.states.size()) {
-                State s = r.states.get(curState);
-
-                if (s.type == State.TYPE.REGISTER_MODIFY) {
-                    // This is only used for Lab Experiment 4 in CENG232@METU.
-                    // Allows the grader to modify a register's value
-                    applyRegisterModify(s);
+            else if (s.type == State.TYPE.CONDITION) {
+                if (!checkOutputs(s.outputs, s.inputs)) {
                     curState++;
                 }
-                else if (s.type == State.TYPE.TRUTH_TABLE) {
-                    if (curPhase == 0) {
-                        setInputs(s.inputs);
-                        curPhase = 1;
+                else {
+                    Integer a = ifCount.get(new Integer(curState));
+                    if (a == null)
+                        a = new Integer(0);
+                    a = a+1;
+                    ifCount.put(curState, a);
+
+                    if (a.intValue() > s.gotoLimit)
                         return;
-                    } else {
-                        if (!checkOutputs(s.outputs, s.inputs)) {
-                            runFailed = true;
-                            curState = r.states.size();
-                            //System.out.printf("\n[!!] TEST RUN FAIL\n");
-                            //System.out.printf("    for inputs: %s,\n", new String(s.inputs));
-                            //System.out.printf("    got outputs: %s.\n", new String(s.outputs));
-                        }
-                        else {
-                            curState++;
-                            curPhase = 0;
-                        }
-                    }
-                }
-                else if (s.type == State.TYPE.CONDITION) {
-                    if (!checkOutputs(s.outputs, s.inputs)) {
-                        curState++;
-                        curPhase = 0;
-                    }
-                    else {
-                        Integer a = ifCount.get(new Integer(curState));
-                        if (a == null)
-                            a = new Integer(0);
-                        a = a+1;
-                        ifCount.put(curState, a);
-
-                        if (a.intValue() > s.gotoLimit) {
-                            runFailed = true;
-                            curState = r.states.size();
-                        }
-                        else {
-                            curState = s.gotoState;
-                            curPhase = 0;
-                        }
-                    }
+                    curState = s.gotoState;
                 }
             }
+        }
+    }
 
-            // NOTE: Was in original ceng version.
-            //if (runFailed)
-            //    System.out.println("FAIL");
-            //else
-            //    System.out.println("PASS");
-
-            curRun++;
-            if (curRun < Settings.runs.size()) {
-                waitingNewRun = true;
-                simulator.requestReset();
-            }
-            else
-                System.exit(0);
+    private class MyListener implements SimulatorListener {
+        public void propagationCompleted(SimulatorEvent e) {
+            //System.out.println("propagationCompleted");
+            if (initialPropagationCompleted)
+                return;
+            initialPropagationCompleted = true;
+            fetchGradingPins();
+            checkChips();
+
+            // This is the simulator's own thread, so the driver can
+            // propagate the project's state without any handoffs; each
+            // run is a plain loop over its states.
+            driver = new CircuitDriver(project.getCircuitState());
+            for (Run r : Settings.runs)
+                doRun(r);
+
+            System.exit(0);
         }
 
         public void tickCompleted(SimulatorEvent e) {
@@ -0,0 +1,282 @@
+
+package tr.edu.metu.ceng.ceng232.grader;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitDriver;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.Clock;
+import com.cburch.logisim.circuit.Pin;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.file.LoadFailedException;
+import com.cburch.logisim.file.Loader;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.tools.AddTool;
+import com.cburch.logisim.tools.Library;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import tr.edu.metu.ceng.ceng232.others.ic74195;
+import tr.edu.metu.ceng.ceng232.others.ic7495;
+
+/**
+ * Grades a single submission without any user interface, going through
+ * each run in a loop on the calling thread with a CircuitDriver.
+ * Everything it touches belongs to the submission's own Loader, Project
+ * and CircuitState, so that several submissions can be graded at once.
+ *
+ * @author sazak
+ */
+class SubmissionGrader {
+    private GradingFile grading;
+    private GradeResult result;
+    private Project project;
+    private CircuitDriver driver;
+    private CircuitState circuitState;
+    private Component[] inputPins;
+    private Pin[] outputPins;
+
+    SubmissionGrader(GradingFile grading, File file) {
+        this.grading = grading;
+        this.result = new GradeResult(file);
+    }
+
+    GradeResult grade() {
+        long start = System.currentTimeMillis();
+        try {
+            LogisimFile file = new Loader(null).openLogisimFile(result.file);
+            checkChips(file);
+
+            // The project's own simulator is never asked to do anything;
+            // all simulation happens in a state of our own.
+            project = new Project(file);
+            Circuit circuit = project.getCurrentCircuit();
+            if (circuit == null)
+                throw new Exception("file has no main circuit");
+            driver = new CircuitDriver(project, circuit);
+            circuitState = driver.getCircuitState();
+            fetchGradingPins(circuit);
+
+            for (int i = 0; i < grading.runs.size(); i++)
+                result.runs.add(Boolean.valueOf(doRun(i)));
+        }
+        catch (LoadFailedException e) {
+            result.error = "cannot load file: " + e.getMessage();
+        }
+        catch (Exception e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        finally {
+            if (project != null)
+                project.getSimulator().shutDown();
+            result.millis = System.currentTimeMillis() - start;
+        }
+        return result;
+    }
+
+    // Mirrors Grader.doRun, recording the failure instead of printing it.
+    private boolean doRun(int run) throws Exception {
+        Run r = grading.runs.get(run);
+        Map<Integer, Integer> ifCount = new HashMap<Integer, Integer>();
+
+        driver.reset();
+
+        int curState = 1;
+        while (curState < r.states.size()) {
+            State s = r.states.get(curState);
+
+            if (s.type == State.TYPE.REGISTER_MODIFY) {
+                applyRegisterModify(s);
+                curState++;
+            }
+            else if (s.type == State.TYPE.TRUTH_TABLE) {
+                setInputs(s.inputs);
+                if (!driver.propagate()) {
+                    fail(run, curState, s, true);
+                    return false;
+                }
+                if (!checkOutputs(s.outputs)) {
+                    fail(run, curState, s, false);
+                    return false;
+                }
+                curState++;
+            }
+            else if (s.type == State.TYPE.CONDITION) {
+                if (!checkOutputs(s.outputs)) {
+                    curState++;
+                }
+                else {
+                    Integer a = ifCount.get(curState);
+                    a = a == null ? 1 : a + 1;
+                    ifCount.put(curState, a);
+
+                    if (a.intValue() > s.gotoLimit) {
+                        fail(run, curState, s, false);
+                        return false;
+                    }
+                    curState = s.gotoState;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void fail(int run, int state, State s, boolean oscillating) {
+        if (result.firstFailure != null)
+            return;
+        GradeResult.Failure f = new GradeResult.Failure();
+        f.run = run + 1;
+        f.state = state;
+        f.inputs = s.inputs == null ? null : new String(s.inputs);
+        f.expected = new String(s.outputs);
+        f.got = getOutputs();
+        f.oscillating = oscillating;
+        result.firstFailure = f;
+    }
+
+    //
+    // pins and chips
+    //
+    private void fetchGradingPins(Circuit c) throws Exception {
+        String[] inputs = grading.inputs;
+        String[] outputs = grading.outputs;
+        inputPins = new Component[inputs.length];
+        outputPins = new Pin[outputs.length];
+
+        for (Object o : c.getNonWires()) {
+            if (o instanceof Pin) {
+                Pin p = (Pin) o;
+                Object label = p.getAttributeSet().getValue(Pin.label_attr);
+                if (p.isInputPin()) {
+                    int i = Arrays.asList(inputs).indexOf(label);
+                    if (i >= 0 && inputPins[i] == null)
+                        inputPins[i] = p;
+                }
+                else {
+                    int i = Arrays.asList(outputs).indexOf(label);
+                    if (i >= 0 && outputPins[i] == null)
+                        outputPins[i] = p;
+                }
+            }
+            else if (o instanceof Clock) {
+                Clock p = (Clock) o;
+                Object label = p.getAttributeSet().getValue(Pin.label_attr);
+                int i = Arrays.asList(inputs).indexOf(label);
+                if (i >= 0 && inputPins[i] == null)
+                    inputPins[i] = p;
+            }
+        }
+
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputPins[i] == null)
+                throw new Exception("Cannot find input pin " + inputs[i]);
+            if (driver.getValue(inputPins[i]).getBitWidth().getWidth() != 1)
+                throw new Exception("Pin " + inputs[i] + " has a wider bit-width than 1");
+        }
+        for (int i = 0; i < outputs.length; i++) {
+            if (outputPins[i] == null)
+                throw new Exception("Cannot find output pin " + outputs[i]);
+        }
+    }
+
+    // Finds the chips used by the file's circuits, named the way XmlReader
+    // reports them to Settings.useComponent.
+    private void checkChips(LogisimFile file) {
+        Map<ComponentFactory, String> names = new HashMap<ComponentFactory, String>();
+        addChipNames(file, names);
+        for (Object lib : file.getLibraries())
+            addChipNames((Library) lib, names);
+
+        Set<String> allowed = new HashSet<String>(Arrays.asList(grading.allowedChips));
+        Set<String> disallowed = new TreeSet<String>();
+        for (Object tool : file.getTools()) {
+            ComponentFactory source = ((AddTool) tool).getFactory();
+            if (!(source instanceof Circuit))
+                continue;
+            for (Object o : ((Circuit) source).getNonWires()) {
+                String name = names.get(((Component) o).getFactory());
+                if (name != null && !allowed.contains(name))
+                    disallowed.add(name);
+            }
+        }
+        result.disallowedChips.addAll(disallowed);
+    }
+
+    private static void addChipNames(Library lib, Map<ComponentFactory, String> names) {
+        for (Object tool : lib.getTools()) {
+            if (tool instanceof AddTool) {
+                AddTool addTool = (AddTool) tool;
+                names.put(addTool.getFactory(), lib.getName() + ":" + addTool.getName());
+            }
+        }
+    }
+
+    //
+    // values
+    //
+    private void setInputs(char[] values) {
+        for (int i = 0; i < values.length; i++) {
+            driver.setInput(inputPins[i], values[i] == '0' ? Value.FALSE : Value.TRUE);
+        }
+    }
+
+    private boolean checkOutputs(char[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 'X' && getPinValue(outputPins[i]) != values[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String getOutputs() {
+        char[] ret = new char[outputPins.length];
+        for (int i = 0; i < ret.length; i++)
+            ret[i] = getPinValue(outputPins[i]);
+        return new String(ret);
+    }
+
+    private char getPinValue(Pin pin) {
+        Value v = driver.getValue(pin);
+        if (v.getBitWidth().getWidth() != 1)
+            return 'X';
+        if (v.equals(Value.ERROR))
+            return 'E';
+        else if (v.equals(Value.FALSE))
+            return '0';
+        else if (v.equals(Value.TRUE))
+            return '1';
+        else
+            return 'X';
+    }
+
+    private void applyRegisterModify(State s) {
+        Value fromValue = toValue(s.stateFrom);
+        Value toValue = toValue(s.stateTo);
+
+        for (Object o : circuitState.getCircuit().getNonWires()) {
+            if (o instanceof ic7495) {
+                ic7495 ic = (ic7495) o;
+                if (ic.fetchValue(circuitState).equals(fromValue))
+                    ic.modifyValue(circuitState, toValue);
+            }
+            else if (o instanceof ic74195) {
+                ic74195 ic = (ic74195) o;
+                if (ic.fetchValue(circuitState).equals(fromValue))
+                    ic.modifyValue(circuitState, toValue);
+            }
+        }
+    }
+
+    private static Value toValue(char[] bits) {
+        Value[] a = new Value[bits.length];
+        for (int i = 0; i < bits.length; i++)
+            a[i] = bits[i] == '1' ? Value.TRUE : Value.FALSE;
+        return Value.create(a);
+    }
+}
@@ -9,12 +9,14 @@ import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
+import com.cburch.logisim.util.GlyphCache;
 import com.cburch.logisim.util.GraphicsUtil;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
+import java.util.Arrays;
 
 /**
  *
@@ -59,10 +61,25 @@ public class ICDraw {
     };
 
 
-    public static void draw(ICDescriptor desc, ComponentDrawContext context, Color color, int x, int y, Direction facing) {
+    public static void draw(final ICDescriptor desc, ComponentDrawContext context, Color color, int x, int y, final Direction facing) {
         Graphics g = context.getGraphics();
         g.setColor(color);
 
+        if (context.isPrintView()) {
+            drawBody(g, desc, x, y, facing);
+            return;
+        }
+        // the chip's name may be a little wider than its box
+        Bounds bds = getBounds(desc, facing).expand(PIN_SPACING);
+        GlyphCache.draw(g, Arrays.asList(desc, facing), bds, x, y,
+                new GlyphCache.Painter() {
+            public void paint(Graphics g, int x, int y) {
+                drawBody(g, desc, x, y, facing);
+            }
+        });
+    }
+
+    private static void drawBody(Graphics g, ICDescriptor desc, int x, int y, Direction facing) {
         Bounds bds = getBounds(desc, facing).translate(x, y);
         g.drawRect(bds.getX(), bds.getY(), bds.getWidth(), bds.getHeight());
 